@@ -0,0 +1,121 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import android.graphics.Rect;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.Orientation;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSize;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the allocations of the boxed {@link ListUtils} helpers against their primitive replacements, and of
+ * packing items. Allocation counting needs the Android runtime, so it runs on a device, and the results are
+ * logged for comparison.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AllocationBenchmark {
+    private static final String TAG = "AllocationBenchmark";
+    private static final int ITERATIONS = 1000;
+    private static final int CHILD_COUNT = 24;
+    private static final int FREE_RECT_COUNT = 16;
+    private static final int PACKED_ITEMS = 1000;
+
+    private final int[] tops = new int[CHILD_COUNT];
+    private final List<Rect> freeRects = new ArrayList<>();
+    private final Rect[] freeRectArray = new Rect[FREE_RECT_COUNT];
+    private final StringBuilder report = new StringBuilder();
+
+    // Results are accumulated here, so the measured code can't be optimised away
+    private int sink = 0;
+
+    public AllocationBenchmark() {
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            tops[i] = (i * 37) % 11;
+        }
+
+        for (int i = 0; i < FREE_RECT_COUNT; i++) {
+            freeRects.add(new Rect(i, 0, i + 1, Integer.MAX_VALUE));
+            freeRectArray[i] = freeRects.get(i);
+        }
+    }
+
+    /**
+     * Runs every case and logs their allocations and time per run.
+     */
+    @Test
+    public void measureAllocations() {
+        measure("Top-most child, boxed", ITERATIONS, this::findTopChildBoxed);
+        measure("Top-most child, primitive", ITERATIONS, this::findTopChild);
+        measure("Filter free rects, copying", ITERATIONS, this::filterFreeRects);
+        measure("Filter free rects, in place", ITERATIONS, this::filterFreeRectsInPlace);
+        measure("Filter free rect array, in place", ITERATIONS, this::filterFreeRectArrayInPlace);
+        measure("Pack " + PACKED_ITEMS + " items", ITERATIONS, this::pack);
+
+        Log.i(TAG, report.toString());
+    }
+
+    private void measure(String name, int iterations, Runnable runnable) {
+        // Warm up, so allocations of class loading and compilation aren't counted
+        runnable.run();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+
+        long nanos = System.nanoTime() - start;
+
+        Debug.stopAllocCounting();
+
+        report.append(name)
+                .append(": ").append(Debug.getThreadAllocCount() / iterations).append(" allocations, ")
+                .append(Debug.getThreadAllocSize() / iterations).append(" bytes, ")
+                .append(nanos / iterations).append(" ns\n");
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private void findTopChildBoxed() {
+        int minTop = ListUtils.<Integer>min(ListUtils.map(ListUtils.range(CHILD_COUNT), index -> tops[index]));
+        sink += ListUtils.firstMatch(ListUtils.range(CHILD_COUNT), index -> tops[index] == minTop);
+    }
+
+    private void findTopChild() {
+        int minTop = ListUtils.reduceRange(CHILD_COUNT, Integer.MAX_VALUE, (min, index) -> Math.min(min, tops[index]));
+        sink += ListUtils.firstMatchInRange(CHILD_COUNT, index -> tops[index] == minTop);
+    }
+
+    private void filterFreeRects() {
+        sink += ListUtils.filter(freeRects, it -> it.top >= 0).size();
+    }
+
+    private void filterFreeRectsInPlace() {
+        ListUtils.filterInPlace(freeRects, it -> it.top >= 0);
+        sink += freeRects.size();
+    }
+
+    private void filterFreeRectArrayInPlace() {
+        sink += ListUtils.filterInPlace(freeRectArray, FREE_RECT_COUNT, it -> it.top >= 0);
+    }
+
+    private void pack() {
+        RectsHelper rectsHelper = new RectsHelper(4, Orientation.VERTICAL, new PackingStats());
+
+        for (int i = 0; i < PACKED_ITEMS; i++) {
+            SpanSize spanSize = new SpanSize(1 + i % 2, 1 + i % 3);
+            rectsHelper.pushRect(i, rectsHelper.findRect(i, spanSize));
+        }
+
+        sink += rectsHelper.getPackedEnd();
+    }
+}
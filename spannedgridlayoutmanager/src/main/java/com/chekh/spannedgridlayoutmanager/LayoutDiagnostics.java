@@ -0,0 +1,271 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Snapshot of the state of a {@link SpannedGridLayoutManager}, to be attached to bug reports as text or in
+ * the binary form written by {@link #writeTo(DataOutput)}. Offsets are in pixels, placements in spans.
+ */
+public final class LayoutDiagnostics {
+    private static final int VERSION = 1;
+
+    boolean vertical = true;
+    int spans = 0;
+    int itemCount = 0;
+    int itemSize = 0;
+    int scroll = 0;
+    int layoutStart = 0;
+    int layoutEnd = 0;
+    int childCount = 0;
+    int firstAttachedPosition = RecyclerView.NO_POSITION;
+    int lastAttachedPosition = RecyclerView.NO_POSITION;
+    int packedCount = 0;
+    int packedEnd = 0;
+    int freeRectCount = 0;
+    int holeCount = 0;
+    int freeStart = 0;
+    int checkpointCount = 0;
+    int spanPackerCount = 0;
+    int placementCacheSize = 0;
+    int pendingScrollPosition = RecyclerView.NO_POSITION;
+    boolean hasPendingScrollOffset = false;
+    int pendingScrollOffset = 0;
+    long[] layoutNanos = new long[0];
+
+    LayoutDiagnostics() {
+    }
+
+    public boolean isVertical() {
+        return vertical;
+    }
+
+    public int getSpans() {
+        return spans;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getItemSize() {
+        return itemSize;
+    }
+
+    public int getScroll() {
+        return scroll;
+    }
+
+    public int getLayoutStart() {
+        return layoutStart;
+    }
+
+    public int getLayoutEnd() {
+        return layoutEnd;
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    /**
+     * First attached position, or {@link RecyclerView#NO_POSITION} if there are no children.
+     */
+    public int getFirstAttachedPosition() {
+        return firstAttachedPosition;
+    }
+
+    /**
+     * Last attached position, or {@link RecyclerView#NO_POSITION} if there are no children.
+     */
+    public int getLastAttachedPosition() {
+        return lastAttachedPosition;
+    }
+
+    /**
+     * Items whose placements are known.
+     */
+    public int getPackedCount() {
+        return packedCount;
+    }
+
+    /**
+     * End of the packed items along the scroll direction, in spans.
+     */
+    public int getPackedEnd() {
+        return packedEnd;
+    }
+
+    public int getFreeRectCount() {
+        return freeRectCount;
+    }
+
+    /**
+     * Free rects enclosed by packed items, which later items may still fill.
+     */
+    public int getHoleCount() {
+        return holeCount;
+    }
+
+    /**
+     * Start of the free space along the scroll direction, in spans. The further it's behind the packed end,
+     * the further back holes reach.
+     */
+    public int getFreeStart() {
+        return freeStart;
+    }
+
+    /**
+     * Saved free rects used to pack items again after changes.
+     */
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Packers kept for span counts used before.
+     */
+    public int getSpanPackerCount() {
+        return spanPackerCount;
+    }
+
+    /**
+     * Entries of the shared {@link PlacementCache}, 0 if there's none.
+     */
+    public int getPlacementCacheSize() {
+        return placementCacheSize;
+    }
+
+    /**
+     * Position waiting to be scrolled to, or {@link RecyclerView#NO_POSITION}.
+     */
+    public int getPendingScrollPosition() {
+        return pendingScrollPosition;
+    }
+
+    public boolean hasPendingScrollOffset() {
+        return hasPendingScrollOffset;
+    }
+
+    public int getPendingScrollOffset() {
+        return pendingScrollOffset;
+    }
+
+    /**
+     * Durations of the last layout passes, the oldest first. The pre-layout pass of predictive item
+     * animations is timed as a pass of its own, before the one laying out the changes.
+     */
+    @NonNull
+    public long[] getLayoutNanos() {
+        return layoutNanos.clone();
+    }
+
+    public void writeTo(@NonNull DataOutput output) throws IOException {
+        output.writeByte(VERSION);
+        output.writeBoolean(vertical);
+        output.writeInt(spans);
+        output.writeInt(itemCount);
+        output.writeInt(itemSize);
+        output.writeInt(scroll);
+        output.writeInt(layoutStart);
+        output.writeInt(layoutEnd);
+        output.writeInt(childCount);
+        output.writeInt(firstAttachedPosition);
+        output.writeInt(lastAttachedPosition);
+        output.writeInt(packedCount);
+        output.writeInt(packedEnd);
+        output.writeInt(freeRectCount);
+        output.writeInt(holeCount);
+        output.writeInt(freeStart);
+        output.writeInt(checkpointCount);
+        output.writeInt(spanPackerCount);
+        output.writeInt(placementCacheSize);
+        output.writeInt(pendingScrollPosition);
+        output.writeBoolean(hasPendingScrollOffset);
+        output.writeInt(pendingScrollOffset);
+        output.writeByte(layoutNanos.length);
+
+        for (long nanos : layoutNanos) {
+            output.writeLong(nanos);
+        }
+    }
+
+    @NonNull
+    public static LayoutDiagnostics readFrom(@NonNull DataInput input) throws IOException {
+        int version = input.readByte();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported diagnostics version " + version);
+        }
+
+        LayoutDiagnostics diagnostics = new LayoutDiagnostics();
+        diagnostics.vertical = input.readBoolean();
+        diagnostics.spans = input.readInt();
+        diagnostics.itemCount = input.readInt();
+        diagnostics.itemSize = input.readInt();
+        diagnostics.scroll = input.readInt();
+        diagnostics.layoutStart = input.readInt();
+        diagnostics.layoutEnd = input.readInt();
+        diagnostics.childCount = input.readInt();
+        diagnostics.firstAttachedPosition = input.readInt();
+        diagnostics.lastAttachedPosition = input.readInt();
+        diagnostics.packedCount = input.readInt();
+        diagnostics.packedEnd = input.readInt();
+        diagnostics.freeRectCount = input.readInt();
+        diagnostics.holeCount = input.readInt();
+        diagnostics.freeStart = input.readInt();
+        diagnostics.checkpointCount = input.readInt();
+        diagnostics.spanPackerCount = input.readInt();
+        diagnostics.placementCacheSize = input.readInt();
+        diagnostics.pendingScrollPosition = input.readInt();
+        diagnostics.hasPendingScrollOffset = input.readBoolean();
+        diagnostics.pendingScrollOffset = input.readInt();
+        diagnostics.layoutNanos = new long[input.readUnsignedByte()];
+
+        for (int i = 0; i < diagnostics.layoutNanos.length; i++) {
+            diagnostics.layoutNanos[i] = input.readLong();
+        }
+
+        return diagnostics;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("LayoutDiagnostics(")
+                .append(vertical ? "vertical" : "horizontal")
+                .append(", spans=").append(spans)
+                .append(", items=").append(itemCount)
+                .append(", itemSize=").append(itemSize)
+                .append(", scroll=").append(scroll)
+                .append(", layout=").append(layoutStart).append("..").append(layoutEnd)
+                .append(", children=").append(childCount)
+                .append(" [").append(firstAttachedPosition).append("..").append(lastAttachedPosition).append("]")
+                .append(", packed=").append(packedCount).append(" to ").append(packedEnd)
+                .append(", freeRects=").append(freeRectCount)
+                .append(" (holes=").append(holeCount).append(", from ").append(freeStart).append(")")
+                .append(", checkpoints=").append(checkpointCount)
+                .append(", spanPackers=").append(spanPackerCount)
+                .append(", placementCache=").append(placementCacheSize);
+
+        if (pendingScrollPosition != RecyclerView.NO_POSITION) {
+            builder.append(", pendingScrollPosition=").append(pendingScrollPosition);
+        }
+
+        if (hasPendingScrollOffset) {
+            builder.append(", pendingScrollOffset=").append(pendingScrollOffset);
+        }
+
+        builder.append(", layoutMicros=[");
+
+        for (int i = 0; i < layoutNanos.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(layoutNanos[i] / 1000);
+        }
+
+        return builder.append("])").toString();
+    }
+}
@@ -40,6 +40,45 @@ public class ListUtils {
         return filtered;
     }
 
+    /**
+     * Removes the items not matching the predicate without allocating, keeping the order of the others.
+     */
+    public static <T> void filterInPlace(List<T> list, Predicate<T> predicate) {
+        int size = list.size();
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            T it = list.get(i);
+
+            if (predicate.predicate(it)) {
+                if (kept != i) list.set(kept, it);
+                kept++;
+            }
+        }
+
+        if (kept < size) list.subList(kept, size).clear();
+    }
+
+    /**
+     * Moves the first size items matching the predicate to the start of the array, keeping their order,
+     * and returns their count. The slots after them are cleared.
+     */
+    public static <T> int filterInPlace(T[] array, int size, Predicate<T> predicate) {
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            T it = array[i];
+
+            if (predicate.predicate(it)) array[kept++] = it;
+        }
+
+        for (int i = kept; i < size; i++) {
+            array[i] = null;
+        }
+
+        return kept;
+    }
+
     public static <T, R> List<R> map(List<T> list, Transform<T, R> transform) {
         List<R> destination = new ArrayList<>();
 
@@ -75,6 +114,31 @@ public class ListUtils {
         return list;
     }
 
+    /**
+     * Returns the first int from 0 until the end matching the predicate, or -1 if there is none. Works as
+     * {@link #firstMatch(List, Predicate)} on {@link #range(int)} without building the list.
+     */
+    public static int firstMatchInRange(int to, IntPredicate predicate) {
+        for (int i = 0; i < to; i++) {
+            if (predicate.predicate(i)) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reduces the ints from 0 until the end without building a list of them.
+     */
+    public static int reduceRange(int to, int initial, IntReducer reducer) {
+        int accumulator = initial;
+
+        for (int i = 0; i < to; i++) {
+            accumulator = reducer.reduce(accumulator, i);
+        }
+
+        return accumulator;
+    }
+
     public interface Predicate<T> {
         boolean predicate(T item);
     }
@@ -82,4 +146,12 @@ public class ListUtils {
     public interface Transform<T, R> {
         R transform(T item);
     }
+
+    public interface IntPredicate {
+        boolean predicate(int item);
+    }
+
+    public interface IntReducer {
+        int reduce(int accumulator, int item);
+    }
 }
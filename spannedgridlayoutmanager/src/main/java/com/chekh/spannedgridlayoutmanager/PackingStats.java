@@ -0,0 +1,177 @@
+package com.chekh.spannedgridlayoutmanager;
+
+/**
+ * Counters of the packing work done by a {@link SpannedGridLayoutManager}, in items.
+ */
+public final class PackingStats {
+    int coalescedUpdates = 0;
+    int changeSets = 0;
+    int appendChangeSets = 0;
+    int skippedMoves = 0;
+    long packedPlacements = 0;
+    long retainedPlacements = 0;
+    long restoredPlacements = 0;
+    long invalidatedPlacements = 0;
+    long cachedPlacements = 0;
+    int layoutPasses = 0;
+    int packingFreeLayoutPasses = 0;
+    int rescaledLayoutPasses = 0;
+    int spanChanges = 0;
+    int reusedSpanPackers = 0;
+    int preLayoutPasses = 0;
+    long disappearingPlacements = 0;
+
+    PackingStats() {
+    }
+
+    /**
+     * Adapter updates merged into change sets.
+     */
+    public int getCoalescedUpdates() {
+        return coalescedUpdates;
+    }
+
+    /**
+     * Change sets applied, at most one per layout pass.
+     */
+    public int getChangeSets() {
+        return changeSets;
+    }
+
+    /**
+     * Change sets that only added items after the packed ones, so nothing was packed again.
+     */
+    public int getAppendChangeSets() {
+        return appendChangeSets;
+    }
+
+    /**
+     * Moves among items of the same span size, which left all the placements as they were.
+     */
+    public int getSkippedMoves() {
+        return skippedMoves;
+    }
+
+    /**
+     * Placements computed by the packer.
+     */
+    public long getPackedPlacements() {
+        return packedPlacements;
+    }
+
+    /**
+     * Placements before the earliest change kept by change sets.
+     */
+    public long getRetainedPlacements() {
+        return retainedPlacements;
+    }
+
+    /**
+     * Placements after the changes restored without packing them again.
+     */
+    public long getRestoredPlacements() {
+        return restoredPlacements;
+    }
+
+    /**
+     * Placements dropped by change sets.
+     */
+    public long getInvalidatedPlacements() {
+        return invalidatedPlacements;
+    }
+
+    /**
+     * Placements taken from a shared {@link PlacementCache}.
+     */
+    public long getCachedPlacements() {
+        return cachedPlacements;
+    }
+
+    /**
+     * Layout passes run by the layout manager.
+     */
+    public int getLayoutPasses() {
+        return layoutPasses;
+    }
+
+    /**
+     * Layout passes that reused the kept placements without packing any item.
+     */
+    public int getPackingFreeLayoutPasses() {
+        return packingFreeLayoutPasses;
+    }
+
+    /**
+     * Layout passes after the item size changed, which kept the placements and only scaled them.
+     */
+    public int getRescaledLayoutPasses() {
+        return rescaledLayoutPasses;
+    }
+
+    /**
+     * Changes of the span count.
+     */
+    public int getSpanChanges() {
+        return spanChanges;
+    }
+
+    /**
+     * Span count changes that reused the placements packed for that count before.
+     */
+    public int getReusedSpanPackers() {
+        return reusedSpanPackers;
+    }
+
+    /**
+     * Pre-layout passes of predictive animations, which reused the placements before the changes.
+     */
+    public int getPreLayoutPasses() {
+        return preLayoutPasses;
+    }
+
+    /**
+     * Disappearing items laid out at their placements after the changes, without binding.
+     */
+    public long getDisappearingPlacements() {
+        return disappearingPlacements;
+    }
+
+    public void reset() {
+        coalescedUpdates = 0;
+        changeSets = 0;
+        appendChangeSets = 0;
+        skippedMoves = 0;
+        packedPlacements = 0;
+        retainedPlacements = 0;
+        restoredPlacements = 0;
+        invalidatedPlacements = 0;
+        cachedPlacements = 0;
+        layoutPasses = 0;
+        packingFreeLayoutPasses = 0;
+        rescaledLayoutPasses = 0;
+        spanChanges = 0;
+        reusedSpanPackers = 0;
+        preLayoutPasses = 0;
+        disappearingPlacements = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PackingStats(coalescedUpdates=" + coalescedUpdates
+                + ", changeSets=" + changeSets
+                + ", appendChangeSets=" + appendChangeSets
+                + ", skippedMoves=" + skippedMoves
+                + ", packedPlacements=" + packedPlacements
+                + ", retainedPlacements=" + retainedPlacements
+                + ", restoredPlacements=" + restoredPlacements
+                + ", invalidatedPlacements=" + invalidatedPlacements
+                + ", cachedPlacements=" + cachedPlacements
+                + ", layoutPasses=" + layoutPasses
+                + ", packingFreeLayoutPasses=" + packingFreeLayoutPasses
+                + ", rescaledLayoutPasses=" + rescaledLayoutPasses
+                + ", spanChanges=" + spanChanges
+                + ", reusedSpanPackers=" + reusedSpanPackers
+                + ", preLayoutPasses=" + preLayoutPasses
+                + ", disappearingPlacements=" + disappearingPlacements + ")";
+    }
+}
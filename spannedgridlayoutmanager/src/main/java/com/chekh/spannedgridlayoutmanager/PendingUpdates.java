@@ -0,0 +1,241 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter changes received between layout passes, merged into a single window of positions whose
+ * placements have to be packed again. Positions before the window keep their placements, positions after
+ * it keep them shifted by the number of added and removed items.
+ */
+class PendingUpdates {
+    private boolean invalidatesAll = false;
+    private boolean hasWindow = false;
+    private int start = 0;
+    private int end = 0;
+    private int shift = 0;
+
+    // Start and count of updated items, in positions after all the changes
+    private final List<int[]> updatedRanges = new ArrayList<>();
+    // Start and count of removed items in the order they were removed, kept while nothing else moved items
+    private final List<int[]> removedRanges = new ArrayList<>();
+    private boolean onlyRemoved = true;
+
+    boolean isEmpty() {
+        return !invalidatesAll && !hasWindow && updatedRanges.isEmpty();
+    }
+
+    boolean invalidatesAll() {
+        return invalidatesAll;
+    }
+
+    boolean hasWindow() {
+        return hasWindow;
+    }
+
+    boolean hasUpdatedItems() {
+        return !updatedRanges.isEmpty();
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    int getShift() {
+        return shift;
+    }
+
+    void onItemsAdded(int position, int itemCount) {
+        onlyRemoved = false;
+
+        List<int[]> ranges = new ArrayList<>(updatedRanges);
+        updatedRanges.clear();
+
+        for (int[] range : ranges) {
+            int rangeEnd = range[0] + range[1];
+
+            if (range[0] >= position) {
+                addUpdatedRange(range[0] + itemCount, range[1]);
+            } else {
+                addUpdatedRange(range[0], Math.min(rangeEnd, position) - range[0]);
+                addUpdatedRange(position + itemCount, rangeEnd - position);
+            }
+        }
+
+        if (!hasWindow) {
+            setWindow(position, position + itemCount, itemCount);
+            return;
+        }
+
+        start = Math.min(start, position);
+        end = Math.max(end, position) + itemCount;
+        shift += itemCount;
+    }
+
+    void onItemsRemoved(int position, int itemCount) {
+        removedRanges.add(new int[]{position, itemCount});
+
+        List<int[]> ranges = new ArrayList<>(updatedRanges);
+        updatedRanges.clear();
+
+        int removedEnd = position + itemCount;
+
+        for (int[] range : ranges) {
+            int rangeEnd = range[0] + range[1];
+
+            addUpdatedRange(range[0], Math.min(rangeEnd, position) - range[0]);
+
+            int rightStart = Math.max(range[0], removedEnd);
+            addUpdatedRange(rightStart - itemCount, rangeEnd - rightStart);
+        }
+
+        if (!hasWindow) {
+            setWindow(position, position, -itemCount);
+            return;
+        }
+
+        start = Math.min(start, position);
+        end = Math.max(end, removedEnd) - itemCount;
+        shift -= itemCount;
+    }
+
+    void onItemsMoved(int from, int to, int itemCount) {
+        // Only the items between the source and the destination change their positions
+        int movedStart = Math.min(from, to);
+        int movedEnd = Math.max(from, to) + itemCount;
+
+        onlyRemoved = false;
+
+        List<int[]> ranges = new ArrayList<>(updatedRanges);
+        updatedRanges.clear();
+
+        for (int[] range : ranges) {
+            int rangeEnd = range[0] + range[1];
+
+            addUpdatedRange(range[0], Math.min(rangeEnd, movedStart) - range[0]);
+
+            int rightStart = Math.max(range[0], movedEnd);
+            addUpdatedRange(rightStart, rangeEnd - rightStart);
+        }
+
+        include(movedStart, movedEnd);
+    }
+
+    void onItemsUpdated(int position, int itemCount) {
+        addUpdatedRange(position, itemCount);
+    }
+
+    void onItemsChanged() {
+        invalidatesAll = true;
+    }
+
+    /**
+     * Returns true if the items between the positions, inclusive, still have the positions they were packed
+     * at and haven't been updated.
+     */
+    boolean keepsPositions(int from, int to) {
+        if (invalidatesAll || hasWindow) return false;
+
+        for (int[] range : updatedRanges) {
+            if (range[0] <= to && range[0] + range[1] > from) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the position the item had before the changes, or -1 if it was added or moved by them.
+     * Removals are undone one by one, so the items between removed ones are mapped too.
+     */
+    int getOldPosition(int position) {
+        if (invalidatesAll) return -1;
+
+        if (onlyRemoved) {
+            for (int i = removedRanges.size() - 1; i >= 0; i--) {
+                int[] range = removedRanges.get(i);
+
+                if (position >= range[0]) {
+                    position += range[1];
+                }
+            }
+
+            return position;
+        }
+
+        if (!hasWindow || position < start) return position;
+
+        return position >= end ? position - shift : -1;
+    }
+
+    /**
+     * Adds the updated items before the limit whose span size changed to the window. Returns the first
+     * updated item from the limit on, which is left to be checked when it's measured.
+     */
+    int resolveUpdates(int limit, SpanChecker checker) {
+        int firstUnresolved = Integer.MAX_VALUE;
+
+        for (int[] range : updatedRanges) {
+            if (range[0] + range[1] > limit) {
+                firstUnresolved = Math.min(firstUnresolved, Math.max(range[0], limit));
+            }
+
+            for (int position = range[0]; position < Math.min(range[0] + range[1], limit); position++) {
+                boolean beforeWindow = !hasWindow || position < start;
+
+                if (!beforeWindow && position < end) continue;
+
+                int oldPosition = beforeWindow ? position : position - shift;
+
+                if (checker.isSpanSizeChanged(position, oldPosition)) {
+                    include(position, position + 1);
+                }
+            }
+        }
+
+        updatedRanges.clear();
+
+        return firstUnresolved;
+    }
+
+    void clear() {
+        invalidatesAll = false;
+        hasWindow = false;
+        start = 0;
+        end = 0;
+        shift = 0;
+        updatedRanges.clear();
+        removedRanges.clear();
+        onlyRemoved = true;
+    }
+
+    private void setWindow(int start, int end, int shift) {
+        this.hasWindow = true;
+        this.start = start;
+        this.end = end;
+        this.shift = shift;
+    }
+
+    private void include(int from, int to) {
+        if (!hasWindow) {
+            setWindow(from, to, 0);
+            return;
+        }
+
+        start = Math.min(start, from);
+        end = Math.max(end, to);
+    }
+
+    private void addUpdatedRange(int position, int itemCount) {
+        if (itemCount > 0) {
+            updatedRanges.add(new int[]{position, itemCount});
+        }
+    }
+
+    interface SpanChecker {
+        boolean isSpanSizeChanged(int position, int oldPosition);
+    }
+}
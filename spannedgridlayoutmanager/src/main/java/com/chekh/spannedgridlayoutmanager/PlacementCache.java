@@ -0,0 +1,259 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.Orientation;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSize;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSizeLookup;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Item placements shared between {@link SpannedGridLayoutManager}s showing the same span sizes, so a new
+ * manager doesn't pack them again. Placements are kept in spans, so they are reused regardless of the
+ * layout size. Managers only read it when they have a {@link SpanSizeLookup}.
+ * <p>
+ * Safe to share between threads.
+ */
+public final class PlacementCache {
+    // Span sizes entries are keyed by, sequences starting with the same ones share a key
+    private static final int HEAD_COUNT = 16;
+    // Sequences kept under one key, e.g. templates sharing their first items
+    private static final int MAX_CANDIDATES = 4;
+
+    private final LruCache<Key, Placements[]> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public PlacementCache(int maxEntries) {
+        cache = new LruCache<Key, Placements[]>(maxEntries) {
+            @Override
+            protected int sizeOf(Key key, Placements[] candidates) {
+                return candidates.length;
+            }
+        };
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public float getHitRate() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+
+        return requests == 0 ? 0f : (float) hits / requests;
+    }
+
+    /**
+     * Returns the number of cached placements.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Returns the longest cached placements matching the first span sizes of the lookup. Entries are found by
+     * their first span sizes, so only a few of them are compared, and there's no copy of the cache.
+     */
+    @Nullable
+    Placements find(int spans, @NonNull Orientation orientation, @NonNull SpanSizeLookup spanSizeLookup, int itemCount) {
+        int headCount = Math.min(HEAD_COUNT, itemCount);
+        int[] headHashes = new int[headCount + 1];
+
+        for (int i = 0; i < headCount; i++) {
+            SpanSize spanSize = spanSizeLookup.getSpanSize(i);
+            headHashes[i + 1] = hash(headHashes[i], spanSize.width, spanSize.height);
+        }
+
+        Placements best = null;
+
+        // Sequences shorter than the head are keyed by all of their span sizes
+        for (int count = headCount; count > 0; count--) {
+            Placements[] candidates = cache.get(new Key(spans, orientation, count, headHashes[count]));
+            if (candidates == null) continue;
+
+            for (Placements placements : candidates) {
+                if (placements.count > itemCount) continue;
+                if (best != null && best.count >= placements.count) continue;
+
+                if (placements.hasSpanSizes(spanSizeLookup)) {
+                    best = placements;
+                }
+            }
+        }
+
+        if (best == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+
+        return best;
+    }
+
+    /**
+     * Stores the placements, replacing the ones of the same sequence when it grew. Shorter placements of a
+     * sequence that's already cached are dropped, as restoring them gives nothing the longer ones don't.
+     * Sequences sharing their first span sizes are kept side by side, the least recently stored dropped first.
+     */
+    synchronized void put(@NonNull Placements placements) {
+        if (placements.count == 0) return;
+
+        Placements[] candidates = cache.get(placements.key);
+
+        if (candidates != null) {
+            for (Placements candidate : candidates) {
+                if (candidate.count >= placements.count && placements.isPrefixOf(candidate)) return;
+            }
+        }
+
+        cache.put(placements.key, withCandidate(withoutPrefixesOf(candidates, placements), placements));
+
+        // Sequences shorter than the head were keyed by all of their span sizes
+        int hash = 0;
+
+        for (int count = 1; count < placements.key.headCount; count++) {
+            hash = hash(hash, placements.getWidth(count - 1), placements.getHeight(count - 1));
+
+            Key key = new Key(placements.key.spans, placements.key.orientation, count, hash);
+            Placements[] prefixes = cache.get(key);
+
+            if (prefixes != null) {
+                Placements[] kept = withoutPrefixesOf(prefixes, placements);
+
+                if (kept.length == 0) {
+                    cache.remove(key);
+                } else if (kept.length < prefixes.length) {
+                    cache.put(key, kept);
+                }
+            }
+        }
+    }
+
+    private static Placements[] withoutPrefixesOf(@Nullable Placements[] candidates, Placements placements) {
+        if (candidates == null) return new Placements[0];
+
+        Placements[] kept = new Placements[candidates.length];
+        int size = 0;
+
+        for (Placements candidate : candidates) {
+            if (!candidate.isPrefixOf(placements)) {
+                kept[size++] = candidate;
+            }
+        }
+
+        return Arrays.copyOf(kept, size);
+    }
+
+    // The most recently stored candidate goes first, the oldest ones are dropped past the limit
+    private static Placements[] withCandidate(Placements[] candidates, Placements placements) {
+        Placements[] result = new Placements[Math.min(candidates.length + 1, MAX_CANDIDATES)];
+        result[0] = placements;
+        System.arraycopy(candidates, 0, result, 1, result.length - 1);
+
+        return result;
+    }
+
+    static int hash(int hash, int width, int height) {
+        return (hash * 31 + width) * 31 + height;
+    }
+
+    private static final class Key {
+        private final int spans;
+        private final Orientation orientation;
+        private final int headCount;
+        private final int hash;
+
+        private Key(int spans, Orientation orientation, int headCount, int hash) {
+            this.spans = spans;
+            this.orientation = orientation;
+            this.headCount = headCount;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return spans == key.spans && orientation == key.orientation && headCount == key.headCount && hash == key.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((spans * 31 + orientation.hashCode()) * 31 + headCount) * 31 + hash;
+        }
+    }
+
+    /**
+     * Immutable packer state after placing the first count items, with rects stored as left, top, right and
+     * bottom quadruples.
+     */
+    static final class Placements {
+        private final Key key;
+        final int count;
+        final int[] rects;
+        final int[] freeRects;
+        final int[] checkpointPositions;
+        final int[][] checkpointRects;
+
+        Placements(int spans, Orientation orientation, int[] rects, int[] freeRects, int[] checkpointPositions, int[][] checkpointRects) {
+            this.count = rects.length / 4;
+            this.rects = rects;
+            this.freeRects = freeRects;
+            this.checkpointPositions = checkpointPositions;
+            this.checkpointRects = checkpointRects;
+
+            int headCount = Math.min(HEAD_COUNT, count);
+            int hash = 0;
+
+            for (int i = 0; i < headCount; i++) {
+                hash = hash(hash, getWidth(i), getHeight(i));
+            }
+
+            this.key = new Key(spans, orientation, headCount, hash);
+        }
+
+        private int getWidth(int index) {
+            return rects[index * 4 + 2] - rects[index * 4];
+        }
+
+        private int getHeight(int index) {
+            return rects[index * 4 + 3] - rects[index * 4 + 1];
+        }
+
+        private boolean hasSpanSizes(SpanSizeLookup spanSizeLookup) {
+            for (int i = 0; i < count; i++) {
+                SpanSize spanSize = spanSizeLookup.getSpanSize(i);
+
+                if (spanSize.width != getWidth(i) || spanSize.height != getHeight(i)) return false;
+            }
+
+            return true;
+        }
+
+        private boolean isPrefixOf(Placements placements) {
+            if (count > placements.count) return false;
+
+            for (int i = 0; i < count; i++) {
+                if (getWidth(i) != placements.getWidth(i) || getHeight(i) != placements.getHeight(i)) return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -7,10 +7,15 @@ import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSize;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 class RectsHelper {
+    // Free rects are saved every this many items, so invalidation never replays more subtractions
+    private static final int CHECKPOINT_INTERVAL = 32;
+
     private final Comparator<Rect> rectComparator = new Comparator<Rect>() {
         @Override
         public int compare(Rect rect1, Rect rect2) {
@@ -49,25 +54,54 @@ class RectsHelper {
         }
     };
 
-    private final LinkedHashMap<Integer, Rect> rectsCache = new LinkedHashMap<>();
+    // Placements by position, only the first packedCount of them are valid
+    private final List<Rect> rectsCache = new ArrayList<>();
+    private int packedCount = 0;
     private final List<Rect> freeRects = new ArrayList<>();
+    private final TreeMap<Integer, List<Rect>> checkpoints = new TreeMap<>();
+    private Tail tail = null;
+    // Largest end along the scroll direction of the items up to each position
+    private final IntList maxEnds = new IntList(CHECKPOINT_INTERVAL);
 
+    // Reused by subtract, so packing an item only allocates the free rects it splits off
+    private final List<Rect> possibleNewRects = new ArrayList<>();
+    private final List<Rect> adjacentRects = new ArrayList<>();
+    private Rect subtractedRect = null;
+    private final ListUtils.Predicate<Rect> keepsFreeRect = this::keepsFreeRect;
 
     private final SpannedGridLayoutManager layoutManager;
     private final SpannedGridLayoutManager.Orientation orientation;
+    private final int spans;
+    private final PackingStats packingStats;
+    private SpannedGridLayoutManager.SectionLookup sectionLookup = null;
 
     RectsHelper(SpannedGridLayoutManager layoutManager, SpannedGridLayoutManager.Orientation orientation) {
+        this(layoutManager, layoutManager.getSpans(), orientation, layoutManager.packingStats);
+    }
+
+    /**
+     * Creates a helper that only packs placements in spans, without a layout manager to size them.
+     */
+    RectsHelper(int spans, SpannedGridLayoutManager.Orientation orientation, PackingStats packingStats) {
+        this(null, spans, orientation, packingStats);
+    }
+
+    private RectsHelper(SpannedGridLayoutManager layoutManager, int spans,
+                        SpannedGridLayoutManager.Orientation orientation, PackingStats packingStats) {
         this.layoutManager = layoutManager;
         this.orientation = orientation;
+        this.spans = spans;
+        this.packingStats = packingStats;
 
         final Rect initialFreeRect;
         if (orientation == SpannedGridLayoutManager.Orientation.VERTICAL) {
-            initialFreeRect = new Rect(0, 0, layoutManager.getSpans(), Integer.MAX_VALUE);
+            initialFreeRect = new Rect(0, 0, spans, Integer.MAX_VALUE);
         } else {
-            initialFreeRect = new Rect(0, 0, Integer.MAX_VALUE, layoutManager.getSpans());
+            initialFreeRect = new Rect(0, 0, Integer.MAX_VALUE, spans);
         }
 
         freeRects.add(initialFreeRect);
+        checkpoints.put(0, copyOf(freeRects));
     }
 
     private int getSize() {
@@ -78,8 +112,48 @@ class RectsHelper {
         }
     }
 
+    /**
+     * Sets the items that start sections. Must be set before anything is packed.
+     */
+    void setSectionLookup(SpannedGridLayoutManager.SectionLookup sectionLookup) {
+        this.sectionLookup = sectionLookup;
+    }
+
+    private boolean isSectionStart(int position) {
+        return sectionLookup != null && position > 0 && sectionLookup.isSectionStart(position);
+    }
+
+    /**
+     * Starts a section at the next position to pack: it's packed from a fresh frontier after all the items
+     * before it, so no hole before it is filled by its items.
+     */
+    private void startSection() {
+        int position = packedCount;
+
+        freeRects.clear();
+        freeRects.add(createFrontier(getPackedEnd()));
+
+        // Free space is replayed from checkpoints, so every section starts with one
+        checkpoints.put(position, copyOf(freeRects));
+    }
+
+    private Rect createFrontier(int start) {
+        if (orientation == SpannedGridLayoutManager.Orientation.VERTICAL) {
+            return new Rect(0, start, spans, Integer.MAX_VALUE);
+        } else {
+            return new Rect(start, 0, Integer.MAX_VALUE, spans);
+        }
+    }
+
     int getItemSize() {
-        return getSize() / layoutManager.getSpans();
+        return getSize() / spans;
+    }
+
+    /**
+     * Whether the placements were packed for the given geometry, they don't depend on the size in pixels.
+     */
+    boolean isPackedFor(int spans, SpannedGridLayoutManager.Orientation orientation) {
+        return this.spans == spans && this.orientation == orientation;
     }
 
     private int getStart() {
@@ -98,10 +172,176 @@ class RectsHelper {
         }
     }
 
+    int getPackedCount() {
+        return packedCount;
+    }
+
+    Rect getRect(int position) {
+        if (position < 0 || position >= packedCount) return null;
+
+        return rectsCache.get(position);
+    }
+
+    /**
+     * Returns the rect the item was placed at, including the items waiting to be restored after changes.
+     */
+    Rect getPlacedRect(int position) {
+        Rect rect = getRect(position);
+        Tail tail = this.tail;
+
+        if (rect != null || tail == null) return rect;
+
+        int index = position - tail.resumePosition;
+
+        if (index < 0 || index >= tail.count) return null;
+
+        return tail.rects != null ? tail.rects.get(index) : rectsCache.get(position);
+    }
+
+    /**
+     * Whether moving an item between the positions leaves all the placements as they are. With sections it
+     * may move a section start even among items of the same span size, so it never does.
+     */
+    boolean keepsPlacementsOnMove(int from, int to) {
+        return sectionLookup == null && hasSameSpanSizes(from, to);
+    }
+
+    /**
+     * Returns true if all the items between the positions, inclusive, are packed with the same span size.
+     */
+    boolean hasSameSpanSizes(int from, int to) {
+        if (from < 0 || to >= packedCount) return false;
+
+        Rect first = rectsCache.get(from);
+
+        for (int i = from + 1; i <= to; i++) {
+            Rect rect = rectsCache.get(i);
+
+            if (rect.width() != first.width() || rect.height() != first.height()) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the end along the scroll direction of the packed items, in spans.
+     */
+    int getPackedEnd() {
+        return packedCount == 0 ? 0 : maxEnds.get(packedCount - 1);
+    }
+
+    /**
+     * Returns the first packed position whose placement ends after the given offset in spans, or the packed
+     * count if there is none. All the items before it end before the offset.
+     */
+    int findFirstPositionEndingAfter(int offset) {
+        int low = 0;
+        int high = getPackedCount();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (maxEnds.get(middle) > offset) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns a packed position from which on all the placements start at or after the offset in spans, or
+     * the packed count. Free space only shrinks while packing, so the smallest start of the free rects saved
+     * at a checkpoint bounds the starts of all the items packed after it.
+     */
+    int findPositionStartingFrom(int offset) {
+        int low = 0;
+        int high = packedCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (getMinStart(checkpoints.floorEntry(middle).getValue()) >= offset) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the start of the free space along the scroll direction in spans. Items packed from now on
+     * start at or after it.
+     */
+    int getFreeStart() {
+        return getMinStart(freeRects);
+    }
+
+    int getFreeRectCount() {
+        return freeRects.size();
+    }
+
+    /**
+     * Returns the number of free rects enclosed by packed items, the others are open towards the end.
+     */
+    int getHoleCount() {
+        int holeCount = 0;
+
+        for (int i = 0; i < freeRects.size(); i++) {
+            Rect rect = freeRects.get(i);
+            int end = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? rect.bottom : rect.right;
+
+            if (end != Integer.MAX_VALUE) holeCount++;
+        }
+
+        return holeCount;
+    }
+
+    int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Adds the packed positions whose placements intersect the area in spans to the list, in order.
+     */
+    void findPositionsIntersecting(Rect area, IntList positions) {
+        int start = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? area.top : area.left;
+        int end = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? area.bottom : area.right;
+
+        int last = findPositionStartingFrom(end);
+
+        for (int i = findFirstPositionEndingAfter(start); i < last; i++) {
+            if (Rect.intersects(rectsCache.get(i), area)) positions.add(i);
+        }
+    }
+
+    /**
+     * Returns the packed position whose placement contains the cell in spans, or -1 if there is none.
+     */
+    int findPositionAt(int x, int y) {
+        int start = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? y : x;
+
+        int last = findPositionStartingFrom(start + 1);
+
+        for (int i = findFirstPositionEndingAfter(start); i < last; i++) {
+            if (rectsCache.get(i).contains(x, y)) return i;
+        }
+
+        return -1;
+    }
+
     Rect findRect(int position, SpanSize spanSize) {
-        Rect rect = rectsCache.get(position);
+        Rect rect = getRect(position);
 
         if (rect == null) {
+            if (position == packedCount && isSectionStart(position)) {
+                startSection();
+            }
+
             rect = findRectForSpanSize(spanSize);
         }
 
@@ -109,59 +349,478 @@ class RectsHelper {
     }
 
     private Rect findRectForSpanSize(SpanSize spanSize) {
-        Rect lane = ListUtils.firstMatch(freeRects, it -> {
-            Rect itemRect = new Rect(it.left, it.top, it.left + spanSize.width, it.top + spanSize.height);
-            return it.contains(itemRect);
-        });
+        for (int i = 0; i < freeRects.size(); i++) {
+            Rect lane = freeRects.get(i);
+
+            if (lane.contains(lane.left, lane.top, lane.left + spanSize.width, lane.top + spanSize.height)) {
+                return new Rect(lane.left, lane.top, lane.left + spanSize.width, lane.top + spanSize.height);
+            }
+        }
 
-        return new Rect(lane.left, lane.top, lane.left + spanSize.width, lane.top + spanSize.height);
+        throw new NoSuchElementException("Collection contains no element matching the predicate.");
     }
 
     void pushRect(int position, Rect rect) {
-        rectsCache.put(position, rect);
-        subtract(rect);
+        // Space of an already placed item was subtracted when it was placed
+        if (position < packedCount) return;
+
+        if (position % CHECKPOINT_INTERVAL == 0) {
+            checkpoints.put(position, copyOf(freeRects));
+        }
+
+        putRect(position, rect);
+        packedCount = position + 1;
+        subtract(freeRects, rect);
+
+        packingStats.packedPlacements++;
+
+        resumeTail();
     }
 
-    private void subtract(Rect subtractedRect) {
-        List<Rect> interestingRects = ListUtils.filter(freeRects, (it) -> RectUtils.isAdjacentTo(it, subtractedRect) || RectUtils.intersects(it, subtractedRect));
+    private void putRect(int position, Rect rect) {
+        if (position < rectsCache.size()) {
+            rectsCache.set(position, rect);
+        } else {
+            rectsCache.add(rect);
+        }
 
-        List<Rect> possibleNewRects = new ArrayList<>();
-        List<Rect> adjacentRects = new ArrayList<>();
+        updateMaxEnd(position);
+    }
 
-        for (Rect free : interestingRects) {
-            if (RectUtils.isAdjacentTo(free, subtractedRect) && !subtractedRect.contains(free)) {
-                adjacentRects.add(free);
-            } else {
-                freeRects.remove(free);
+    /**
+     * Updates the largest end at the position and returns true if it changed.
+     */
+    private boolean updateMaxEnd(int position) {
+        if (position >= maxEnds.size()) {
+            maxEnds.resize(position + 1);
+        }
 
-                if (free.left < subtractedRect.left) { // Left
-                    possibleNewRects.add(new Rect(free.left, free.top, subtractedRect.left, free.bottom));
+        Rect rect = rectsCache.get(position);
+
+        int end = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? rect.bottom : rect.right;
+        int maxEnd = position == 0 ? end : Math.max(maxEnds.get(position - 1), end);
+
+        boolean changed = maxEnds.get(position) != maxEnd;
+        maxEnds.set(position, maxEnd);
+
+        return changed;
+    }
+
+    /**
+     * Drops placements from start on. Placements after end (given in positions after the change, which
+     * shifted later items by shift) are kept aside and restored once packing reaches end with the same free
+     * space, up to a translation along the scroll direction.
+     */
+    void invalidate(int start, int end, int shift) {
+        dropTail();
+
+        int packedCount = this.packedCount;
+
+        if (start >= packedCount) return;
+
+        int tailStart = end - shift;
+        Tail tail = null;
+
+        if (tailStart < packedCount) {
+            tail = new Tail(end, packedCount - tailStart, getFreeRectsAt(tailStart), new ArrayList<>(freeRects));
+
+            if (shift != 0) {
+                tail.rects = new ArrayList<>(rectsCache.subList(tailStart, packedCount));
+                tail.checkpoints = new TreeMap<>();
+
+                for (Map.Entry<Integer, List<Rect>> checkpoint : checkpoints.tailMap(tailStart, false).entrySet()) {
+                    tail.checkpoints.put(checkpoint.getKey() - tailStart + end, checkpoint.getValue());
                 }
+            }
+        }
+
+        List<Rect> startFreeRects = getFreeRectsBefore(start);
+
+        // The item at the start may no longer start a section, so its checkpoint is saved again when it's packed
+        boolean keepsStartCheckpoint = start == 0;
+
+        if (tail != null && tail.rects == null) {
+            // Items after the changes keep their positions, so they stay in place until packing reaches them
+            checkpoints.subMap(start, !keepsStartCheckpoint, tailStart, true).clear();
+        } else {
+            rectsCache.subList(start, rectsCache.size()).clear();
+            checkpoints.tailMap(start, !keepsStartCheckpoint).clear();
+        }
+
+        this.packedCount = start;
+
+        freeRects.clear();
+        freeRects.addAll(startFreeRects);
+
+        packingStats.retainedPlacements += start;
+        packingStats.invalidatedPlacements += packedCount - start;
+
+        this.tail = tail;
+        resumeTail();
+    }
+
+    private void dropTail() {
+        Tail tail = this.tail;
+
+        if (tail == null) return;
+
+        this.tail = null;
+
+        if (tail.rects == null) {
+            rectsCache.subList(packedCount, rectsCache.size()).clear();
+            checkpoints.tailMap(packedCount, false).clear();
+        }
+    }
+
+    /**
+     * Returns the free rects the item at the position was placed in, after starting its section.
+     */
+    private List<Rect> getFreeRectsAt(int position) {
+        if (position == getPackedCount()) return copyOf(freeRects);
+
+        return replay(checkpoints.floorEntry(position), position);
+    }
 
-                if (free.right > subtractedRect.right) { // Right
-                    possibleNewRects.add(new Rect(subtractedRect.right, free.top, free.right, free.bottom));
+    /**
+     * Returns the free rects before the item at the position was placed, without starting its section.
+     */
+    private List<Rect> getFreeRectsBefore(int position) {
+        if (position == 0) return copyOf(checkpoints.get(0));
+
+        // Sections start with a checkpoint, so none starts between the previous one and the position
+        return replay(checkpoints.lowerEntry(position), position);
+    }
+
+    private List<Rect> replay(Map.Entry<Integer, List<Rect>> checkpoint, int position) {
+        List<Rect> freeRects = copyOf(checkpoint.getValue());
+
+        for (int i = checkpoint.getKey(); i < position; i++) {
+            subtract(freeRects, rectsCache.get(i));
+        }
+
+        return freeRects;
+    }
+
+    private void resumeTail() {
+        Tail tail = this.tail;
+
+        if (tail == null || packedCount < tail.resumePosition) return;
+
+        if (packedCount == tail.resumePosition && isSectionStart(packedCount)) {
+            startSection();
+        }
+
+        Integer offset = packedCount == tail.resumePosition ? findOffset(tail.resumeFreeRects, freeRects) : null;
+
+        // Free space differs, so items after the changes can be placed differently
+        if (offset == null) {
+            // Sections start from a fresh frontier, so the items can be restored from the next one
+            if (!advanceTailToSection(tail)) dropTail();
+            return;
+        }
+
+        this.tail = null;
+
+        int resumePosition = tail.resumePosition;
+
+        if (tail.rects == null) {
+            if (offset != 0) {
+                for (int i = resumePosition; i < resumePosition + tail.count; i++) {
+                    offsetAlongScroll(rectsCache.get(i), offset);
                 }
 
-                if (free.top < subtractedRect.top) { // Top
-                    possibleNewRects.add(new Rect(free.left, free.top, free.right, subtractedRect.top));
+                for (List<Rect> checkpoint : checkpoints.tailMap(resumePosition, false).values()) {
+                    for (Rect rect : checkpoint) {
+                        offsetAlongScroll(rect, offset);
+                    }
                 }
+            }
+        } else {
+            for (Rect rect : tail.rects) {
+                offsetAlongScroll(rect, offset);
+            }
 
-                if (free.bottom > subtractedRect.bottom) { // Bottom
-                    possibleNewRects.add(new Rect(free.left, subtractedRect.bottom, free.right, free.bottom));
+            rectsCache.addAll(tail.rects);
+
+            for (Map.Entry<Integer, List<Rect>> checkpoint : tail.checkpoints.entrySet()) {
+                for (Rect rect : checkpoint.getValue()) {
+                    offsetAlongScroll(rect, offset);
                 }
+
+                checkpoints.put(checkpoint.getKey(), checkpoint.getValue());
             }
         }
 
-        for (Rect rect : possibleNewRects) {
-            boolean isAdjacent = ListUtils.firstMatchOrNull(adjacentRects, it -> it != rect && it.contains(rect)) != null;
+        packedCount = resumePosition + tail.count;
+
+        boolean inPlace = tail.rects == null && offset == 0;
+
+        for (int i = resumePosition; i < packedCount; i++) {
+            // Once the largest end is the same as before, it's the same for the rest of the items too
+            if (!updateMaxEnd(i) && inPlace) break;
+        }
+
+        freeRects.clear();
+
+        for (Rect rect : tail.freeRects) {
+            offsetAlongScroll(rect, offset);
+            freeRects.add(rect);
+        }
+
+        Collections.sort(freeRects, rectComparator);
+
+        packingStats.restoredPlacements += tail.count;
+    }
+
+    /**
+     * Moves the start of the tail to the next section start in it, so the items before it are packed again.
+     * Returns false if there is none.
+     */
+    private boolean advanceTailToSection(Tail tail) {
+        if (sectionLookup == null || packedCount != tail.resumePosition) return false;
+
+        int tailEnd = tail.resumePosition + tail.count;
+        int sectionStart = tail.resumePosition + 1;
+
+        while (sectionStart < tailEnd && !isSectionStart(sectionStart)) {
+            sectionStart++;
+        }
+
+        if (sectionStart >= tailEnd) return false;
+
+        int skipped = sectionStart - tail.resumePosition;
+        Rect sectionRect;
+
+        if (tail.rects == null) {
+            sectionRect = rectsCache.get(sectionStart);
+
+            // Checkpoints of the skipped items don't match the ones they're packed with now
+            checkpoints.subMap(tail.resumePosition, false, sectionStart, true).clear();
+        } else {
+            sectionRect = tail.rects.get(skipped);
+
+            tail.rects.subList(0, skipped).clear();
+            tail.checkpoints.headMap(sectionStart, true).clear();
+        }
+
+        int sectionStartOffset = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? sectionRect.top : sectionRect.left;
+
+        tail.resumePosition = sectionStart;
+        tail.count -= skipped;
+        tail.resumeFreeRects = Collections.singletonList(createFrontier(sectionStartOffset));
+
+        return true;
+    }
+
+    /**
+     * Returns the offset along the scroll direction that turns the first free rects into the second ones,
+     * or null if there is none.
+     */
+    private Integer findOffset(List<Rect> from, List<Rect> to) {
+        if (from.size() != to.size()) return null;
+        if (from.isEmpty()) return 0;
+
+        int offset = getMinStart(to) - getMinStart(from);
+
+        Rect offsetRect = new Rect();
+
+        for (Rect rect : from) {
+            offsetRect.set(rect);
+            offsetAlongScroll(offsetRect, offset);
+
+            if (!to.contains(offsetRect)) return null;
+        }
+
+        return offset;
+    }
+
+    private int getMinStart(List<Rect> rects) {
+        int minStart = Integer.MAX_VALUE;
+
+        for (Rect rect : rects) {
+            int start = orientation == SpannedGridLayoutManager.Orientation.VERTICAL ? rect.top : rect.left;
+            if (start < minStart) minStart = start;
+        }
+
+        return minStart;
+    }
+
+    private void offsetAlongScroll(Rect rect, int offset) {
+        if (offset == 0) return;
+
+        // Free space at the end of the layout is unbounded and stays that way
+        if (orientation == SpannedGridLayoutManager.Orientation.VERTICAL) {
+            rect.top += offset;
+            if (rect.bottom != Integer.MAX_VALUE) rect.bottom += offset;
+        } else {
+            rect.left += offset;
+            if (rect.right != Integer.MAX_VALUE) rect.right += offset;
+        }
+    }
+
+    PlacementCache.Placements getPlacements() {
+        int[] rects = new int[packedCount * 4];
+
+        for (int i = 0; i < packedCount; i++) {
+            Rect rect = rectsCache.get(i);
+
+            rects[i * 4] = rect.left;
+            rects[i * 4 + 1] = rect.top;
+            rects[i * 4 + 2] = rect.right;
+            rects[i * 4 + 3] = rect.bottom;
+        }
+
+        // Items after the packed ones may still have checkpoints while waiting to be restored
+        Map<Integer, List<Rect>> checkpoints = this.checkpoints.headMap(packedCount, true);
+
+        int[] checkpointPositions = new int[checkpoints.size()];
+        int[][] checkpointRects = new int[checkpoints.size()][];
+
+        int index = 0;
+        for (Map.Entry<Integer, List<Rect>> checkpoint : checkpoints.entrySet()) {
+            checkpointPositions[index] = checkpoint.getKey();
+            checkpointRects[index] = toArray(checkpoint.getValue());
+            index++;
+        }
+
+        return new PlacementCache.Placements(spans, orientation, rects, toArray(freeRects), checkpointPositions, checkpointRects);
+    }
+
+    void restorePlacements(PlacementCache.Placements placements) {
+        rectsCache.clear();
+        checkpoints.clear();
+        tail = null;
+
+        for (int i = 0; i < placements.count; i++) {
+            int[] rects = placements.rects;
+            putRect(i, new Rect(rects[i * 4], rects[i * 4 + 1], rects[i * 4 + 2], rects[i * 4 + 3]));
+        }
+
+        packedCount = placements.count;
+
+        for (int i = 0; i < placements.checkpointPositions.length; i++) {
+            checkpoints.put(placements.checkpointPositions[i], fromArray(placements.checkpointRects[i]));
+        }
+
+        freeRects.clear();
+        freeRects.addAll(fromArray(placements.freeRects));
+
+        packingStats.cachedPlacements += placements.count;
+    }
+
+    private static int[] toArray(List<Rect> rects) {
+        int[] array = new int[rects.size() * 4];
+
+        for (int i = 0; i < rects.size(); i++) {
+            Rect rect = rects.get(i);
+
+            array[i * 4] = rect.left;
+            array[i * 4 + 1] = rect.top;
+            array[i * 4 + 2] = rect.right;
+            array[i * 4 + 3] = rect.bottom;
+        }
+
+        return array;
+    }
+
+    private static List<Rect> fromArray(int[] array) {
+        List<Rect> rects = new ArrayList<>(array.length / 4);
+
+        for (int i = 0; i < array.length; i += 4) {
+            rects.add(new Rect(array[i], array[i + 1], array[i + 2], array[i + 3]));
+        }
+
+        return rects;
+    }
+
+    private static List<Rect> copyOf(List<Rect> rects) {
+        List<Rect> copy = new ArrayList<>(rects.size());
+
+        for (Rect rect : rects) {
+            copy.add(new Rect(rect));
+        }
+
+        return copy;
+    }
+
+    private void subtract(List<Rect> freeRects, Rect subtractedRect) {
+        this.subtractedRect = subtractedRect;
+
+        // Free rects the item overlaps are split around it, the others are kept
+        ListUtils.filterInPlace(freeRects, keepsFreeRect);
+
+        for (int i = 0; i < possibleNewRects.size(); i++) {
+            Rect rect = possibleNewRects.get(i);
+
+            boolean isAdjacent = containsOther(adjacentRects, rect);
             if (isAdjacent) continue;
 
-            boolean isContained = ListUtils.firstMatchOrNull(possibleNewRects, (it) -> it != rect && it.contains(rect)) != null;
+            boolean isContained = containsOther(possibleNewRects, rect);
             if (isContained) continue;
 
             freeRects.add(rect);
         }
 
+        possibleNewRects.clear();
+        adjacentRects.clear();
+        this.subtractedRect = null;
+
         Collections.sort(freeRects, rectComparator);
     }
+
+    private boolean keepsFreeRect(Rect free) {
+        Rect subtractedRect = this.subtractedRect;
+        boolean isAdjacent = RectUtils.isAdjacentTo(free, subtractedRect);
+
+        if (!isAdjacent && !RectUtils.intersects(free, subtractedRect)) return true;
+
+        if (isAdjacent && !subtractedRect.contains(free)) {
+            adjacentRects.add(free);
+            return true;
+        }
+
+        if (free.left < subtractedRect.left) { // Left
+            possibleNewRects.add(new Rect(free.left, free.top, subtractedRect.left, free.bottom));
+        }
+
+        if (free.right > subtractedRect.right) { // Right
+            possibleNewRects.add(new Rect(subtractedRect.right, free.top, free.right, free.bottom));
+        }
+
+        if (free.top < subtractedRect.top) { // Top
+            possibleNewRects.add(new Rect(free.left, free.top, free.right, subtractedRect.top));
+        }
+
+        if (free.bottom > subtractedRect.bottom) { // Bottom
+            possibleNewRects.add(new Rect(free.left, subtractedRect.bottom, free.right, free.bottom));
+        }
+
+        return false;
+    }
+
+    private static boolean containsOther(List<Rect> rects, Rect rect) {
+        for (int i = 0; i < rects.size(); i++) {
+            Rect it = rects.get(i);
+            if (it != rect && it.contains(rect)) return true;
+        }
+
+        return false;
+    }
+
+    private static final class Tail {
+        private int resumePosition;
+        private int count;
+        private List<Rect> resumeFreeRects;
+        private final List<Rect> freeRects;
+        // Rects and checkpoints moved aside when the items are shifted, null if they are kept in place
+        private List<Rect> rects = null;
+        private TreeMap<Integer, List<Rect>> checkpoints = null;
+
+        private Tail(int resumePosition, int count, List<Rect> resumeFreeRects, List<Rect> freeRects) {
+            this.resumePosition = resumePosition;
+            this.count = count;
+            this.resumeFreeRects = resumeFreeRects;
+            this.freeRects = freeRects;
+        }
+    }
 }
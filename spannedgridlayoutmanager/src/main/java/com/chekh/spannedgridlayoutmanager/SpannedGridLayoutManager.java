@@ -6,22 +6,48 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v7.widget.LinearSmoothScroller;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 
-public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
+public class SpannedGridLayoutManager extends RecyclerView.LayoutManager implements RecyclerView.SmoothScroller.ScrollVectorProvider {
     private final Orientation orientation;
-    private final int spans;
+    private int spans;
     private int scroll = 0;
     private RectsHelper rectsHelper;
     private int layoutStart = 0;
     private int layoutEnd = 0;
-    private final LinkedHashMap<Integer, Rect> childFrames = new LinkedHashMap<>();
+    // Item size the scroll offset was computed with
+    private int scrollItemSize = 0;
+    private final Rect frame = new Rect();
+    private final Rect spanArea = new Rect();
     private Integer pendingScrollToPosition = null;
+    private Integer pendingScrollOffset = null;
     private boolean itemOrderIsStable = false;
+    private SpanSizeLookup spanSizeLookup = null;
+    private SectionLookup sectionLookup = null;
+    private VisibilityListener visibilityListener = null;
+    private final VisibilityTracker visibilityTracker = new VisibilityTracker();
+    private boolean visibilityChangesPending = false;
+    // Attached children keep the positions before the adapter changes until they're laid out again
+    private boolean adapterChangesPending = false;
+    private final Runnable dispatchVisibilityChangesRunnable = this::dispatchVisibilityChanges;
+    private final PendingUpdates pendingUpdates = new PendingUpdates();
+    private PlacementCache placementCache = null;
+    private int publishedPlacements = 0;
+    final PackingStats packingStats = new PackingStats();
+    // Durations of the last layout passes, written in a ring
+    private final long[] layoutNanos = new long[LAYOUT_TIMINGS];
+    private int nextLayoutTiming = 0;
+    private int layoutTimingCount = 0;
+    // Packers of the span counts used before, the least recently used first
+    private final LinkedHashMap<Integer, RectsHelper> spanPackers = new LinkedHashMap<>(MAX_SPAN_PACKERS, 0.75f, true);
+
+    private static final int MAX_SPAN_PACKERS = 3;
+    private static final int LAYOUT_TIMINGS = 8;
 
     public SpannedGridLayoutManager(Orientation orientation, int spans) {
         super();
@@ -38,6 +64,182 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
         return spans;
     }
 
+    /**
+     * Changes the number of spans, keeping the first visible item at the start. Placements packed for the
+     * last few span counts are kept, so switching back to one of them doesn't pack the items again.
+     */
+    public void setSpans(int spans) {
+        if (spans < 1) {
+            throw new InvalidMaxSpansException(spans);
+        }
+
+        if (spans == this.spans) return;
+
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        if (rectsHelper != null) {
+            publishPlacements();
+            spanPackers.put(this.spans, rectsHelper);
+
+            if (spanPackers.size() > MAX_SPAN_PACKERS) {
+                Iterator<Integer> iterator = spanPackers.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        if (getChildCount() > 0 && pendingScrollToPosition == null) {
+            pendingScrollToPosition = getFirstVisiblePosition();
+            pendingScrollOffset = null;
+        }
+
+        this.spans = spans;
+        this.rectsHelper = spanPackers.remove(spans);
+        this.publishedPlacements = 0;
+
+        packingStats.spanChanges++;
+
+        if (this.rectsHelper != null) {
+            packingStats.reusedSpanPackers++;
+        }
+
+        scrollItemSize = 0;
+
+        requestLayout();
+    }
+
+    public int getSpanCount() {
+        return spans;
+    }
+
+    /**
+     * Sets the lookup used to get item span sizes without binding views.
+     * It must return the same span sizes the adapter sets in {@link SpanLayoutParams}.
+     */
+    public void setSpanSizeLookup(@Nullable SpanSizeLookup spanSizeLookup) {
+        this.spanSizeLookup = spanSizeLookup;
+    }
+
+    @Nullable
+    public SpanSizeLookup getSpanSizeLookup() {
+        return spanSizeLookup;
+    }
+
+    /**
+     * Sets the lookup of the items starting sections. Each section is packed from a fresh frontier after
+     * the items before it, so changes in a section don't move the items of the other ones within theirs,
+     * and the items after it are restored from the next section start.
+     */
+    public void setSectionLookup(@Nullable SectionLookup sectionLookup) {
+        if (sectionLookup == this.sectionLookup) return;
+
+        this.sectionLookup = sectionLookup;
+
+        // Placements depend on the sections, so all of them are packed again
+        rectsHelper = null;
+        spanPackers.clear();
+
+        requestLayout();
+    }
+
+    @Nullable
+    public SectionLookup getSectionLookup() {
+        return sectionLookup;
+    }
+
+    /**
+     * Sets the listener notified of the items that become visible or hidden, or whose visible fraction
+     * changes. Changes are batched into at most one call per frame.
+     */
+    public void setVisibilityListener(@Nullable VisibilityListener visibilityListener) {
+        this.visibilityListener = visibilityListener;
+
+        visibilityTracker.clear();
+        removeCallbacks(dispatchVisibilityChangesRunnable);
+        visibilityChangesPending = false;
+
+        invalidateVisibility();
+    }
+
+    @Nullable
+    public VisibilityListener getVisibilityListener() {
+        return visibilityListener;
+    }
+
+    /**
+     * Sets the cache to share item placements with other managers. Placements are read from it only when a
+     * {@link SpanSizeLookup} is set. They're stored when the manager is detached or its span count changes,
+     * as copying them on every pass would cost as much as packing them.
+     */
+    public void setPlacementCache(@Nullable PlacementCache placementCache) {
+        this.placementCache = placementCache;
+        this.publishedPlacements = 0;
+    }
+
+    @Nullable
+    public PlacementCache getPlacementCache() {
+        return placementCache;
+    }
+
+    @NonNull
+    public PackingStats getPackingStats() {
+        return packingStats;
+    }
+
+    /**
+     * Takes a snapshot of the layout state for bug reports. Nothing is collected until it's called, except
+     * for the durations of the last layout passes, pre-layout passes of item animations included.
+     */
+    @NonNull
+    public LayoutDiagnostics getDiagnostics() {
+        LayoutDiagnostics diagnostics = new LayoutDiagnostics();
+        diagnostics.vertical = orientation == Orientation.VERTICAL;
+        diagnostics.spans = spans;
+        diagnostics.itemCount = getItemCount();
+        diagnostics.scroll = scroll;
+        diagnostics.layoutStart = layoutStart;
+        diagnostics.layoutEnd = layoutEnd;
+        diagnostics.childCount = getChildCount();
+
+        if (getChildCount() > 0) {
+            diagnostics.firstAttachedPosition = getFirstVisiblePosition();
+            diagnostics.lastAttachedPosition = getLastVisiblePosition();
+        }
+
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        if (rectsHelper != null) {
+            diagnostics.itemSize = rectsHelper.getItemSize();
+            diagnostics.packedCount = rectsHelper.getPackedCount();
+            diagnostics.packedEnd = rectsHelper.getPackedEnd();
+            diagnostics.freeRectCount = rectsHelper.getFreeRectCount();
+            diagnostics.holeCount = rectsHelper.getHoleCount();
+            diagnostics.freeStart = rectsHelper.getFreeStart();
+            diagnostics.checkpointCount = rectsHelper.getCheckpointCount();
+        }
+
+        diagnostics.spanPackerCount = spanPackers.size();
+        diagnostics.placementCacheSize = placementCache != null ? placementCache.size() : 0;
+
+        if (pendingScrollToPosition != null) {
+            diagnostics.pendingScrollPosition = pendingScrollToPosition;
+        }
+
+        if (pendingScrollOffset != null) {
+            diagnostics.hasPendingScrollOffset = true;
+            diagnostics.pendingScrollOffset = pendingScrollOffset;
+        }
+
+        int count = layoutTimingCount;
+        diagnostics.layoutNanos = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            diagnostics.layoutNanos[i] = layoutNanos[(nextLayoutTiming - count + i + layoutNanos.length) % layoutNanos.length];
+        }
+
+        return diagnostics;
+    }
+
      private int getFirstVisiblePosition() {
         if (getChildCount() == 0) return 0;
 
@@ -63,47 +265,88 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
         );
     }
 
+    @Override
+    public boolean supportsPredictiveItemAnimations() {
+        return true;
+    }
+
     @Override
     public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
-        rectsHelper = new RectsHelper(this, orientation);
+        long startNanos = System.nanoTime();
 
-        layoutStart = getPaddingStartForOrientation();
-        layoutEnd = getPaddingEndForOrientation();
+        if (state.isPreLayout()) {
+            layoutBeforeChanges(recycler, state);
+            recordLayoutTiming(startNanos);
+            return;
+        }
+
+        packingStats.layoutPasses++;
+        long packedPlacements = packingStats.packedPlacements;
+
+        int firstVisiblePosition = getFirstVisiblePosition();
 
-        // Clear cache, since layout may change
-        childFrames.clear();
+        keepAnchorOnResize(firstVisiblePosition);
 
         // If there were any views, detach them so they can be recycled
         detachAndScrapAttachedViews(recycler);
 
+        int firstUnresolvedUpdate = applyPendingUpdates(recycler, firstVisiblePosition);
+
+        if (rectsHelper != null && !rectsHelper.isPackedFor(spans, orientation)) {
+            rectsHelper = null;
+        }
+
+        if (rectsHelper == null) {
+            rectsHelper = new RectsHelper(this, orientation);
+            rectsHelper.setSectionLookup(sectionLookup);
+            publishedPlacements = 0;
+
+            restoreCachedPlacements();
+        }
+
+        layoutStart = getPaddingStartForOrientation();
+        layoutEnd = getPaddingEndForOrientation();
+
         Integer pendingScrollToPosition = this.pendingScrollToPosition;
 
         if (pendingScrollToPosition != null && pendingScrollToPosition >= spans) {
 
-            scroll = 0;
+            Rect placement = findPlacement(pendingScrollToPosition);
 
-            View lastAddedView = null;
-            int position = 0;
-            // Keep adding views until reaching the one needed
-            while (findViewByPosition(pendingScrollToPosition) == null) {
-                if (lastAddedView != null) {
-                    // Recycle views to reduce RAM usage
-                    updateEdgesWithRemovedChild(lastAddedView, Direction.START);
-                    removeAndRecycleView(lastAddedView, recycler);
+            if (placement != null) {
+                // Placement is already known, so there is no need to bind the items before it
+                int offset = getPlacementStart(placement) * rectsHelper.getItemSize() + getPaddingStartForOrientation();
+
+                layoutStart = offset;
+                layoutEnd = offset;
+                scroll = offset;
+            } else {
+                scroll = 0;
+
+                View lastAddedView = null;
+                int position = 0;
+                // Keep adding views until reaching the one needed
+                while (findViewByPosition(pendingScrollToPosition) == null) {
+                    if (lastAddedView != null) {
+                        // Recycle views to reduce RAM usage
+                        updateEdgesWithRemovedChild(lastAddedView, Direction.START);
+                        removeAndRecycleView(lastAddedView, recycler);
+                    }
+                    lastAddedView = makeAndAddView(position, Direction.END, recycler);
+                    updateEdgesWithNewChild(lastAddedView);
+                    position++;
                 }
-                lastAddedView = makeAndAddView(position, Direction.END, recycler);
-                updateEdgesWithNewChild(lastAddedView);
-                position++;
-            }
 
-            View view = lastAddedView;
+                View view = lastAddedView;
+
+                assert view != null;
+                int offset = view.getTop() - getTopDecorationHeight(view);
+                removeAndRecycleView(view, recycler);
 
-            assert view != null;
-            int offset = view.getTop() - getTopDecorationHeight(view);
-            removeAndRecycleView(view, recycler);
+                layoutStart = offset;
+                scrollBy(-offset, state);
+            }
 
-            layoutStart = offset;
-            scrollBy(-offset, state);
             fillAfter(pendingScrollToPosition, recycler, state, getSize());
 
             // Scrolling will add more views at end, so add a few at the beginning
@@ -111,15 +354,449 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
             this.pendingScrollToPosition = null;
         } else {
-            // Fill from start to visible end
-            fillGap(Direction.END, recycler, state);
+            if (pendingScrollOffset != null) {
+                scroll = pendingScrollOffset;
+                this.pendingScrollOffset = null;
+            }
+
+            if (pendingScrollToPosition != null) {
+                // Items in the first row are scrolled to by scrolling to the very start
+                scroll = 0;
+                this.pendingScrollToPosition = null;
+            }
+
+            // Updated items can only be checked for span size changes when they are measured in order
+            int anchorPosition = Math.min(findAnchorPosition(recycler, state), firstUnresolvedUpdate);
+
+            if (anchorPosition > 0) {
+                // Items before the anchor end before the visible area, so there is no need to lay them out
+                int offset = getPlacementStart(rectsHelper.getRect(anchorPosition)) * rectsHelper.getItemSize() + getPaddingStartForOrientation();
+
+                layoutStart = offset;
+                layoutEnd = offset;
+
+                fillAfter(anchorPosition, recycler, state, getSize());
+            } else {
+                // Fill from start to visible end
+                fillGap(Direction.END, recycler, state);
+            }
+        }
+
+        if (state.willRunPredictiveAnimations()) {
+            layoutDisappearingViews(recycler);
+        }
+
+        scrollItemSize = rectsHelper.getItemSize();
+
+        if (packingStats.packedPlacements == packedPlacements) {
+            packingStats.packingFreeLayoutPasses++;
         }
+
+        recordLayoutTiming(startNanos);
+    }
+
+    private void recordLayoutTiming(long startNanos) {
+        layoutNanos[nextLayoutTiming] = System.nanoTime() - startNanos;
+        nextLayoutTiming = (nextLayoutTiming + 1) % layoutNanos.length;
+
+        if (layoutTimingCount < layoutNanos.length) {
+            layoutTimingCount++;
+        }
+    }
+
+    /**
+     * Placements in spans don't change when the item size does, so the scroll offset is scaled to keep the
+     * first visible item where it was and the items are laid out again with the new size.
+     */
+    private void keepAnchorOnResize(int anchorPosition) {
+        RectsHelper rectsHelper = this.rectsHelper;
+        if (rectsHelper == null) return;
+
+        int itemSize = rectsHelper.getItemSize();
+
+        if (scrollItemSize <= 0 || itemSize == scrollItemSize) return;
+
+        packingStats.rescaledLayoutPasses++;
+
+        Rect rect = rectsHelper.getPlacedRect(anchorPosition);
+
+        if (rect == null || getChildCount() == 0 || pendingScrollToPosition != null || pendingScrollOffset != null) return;
+
+        int placementStart = getPlacementStart(rect);
+        int anchorOffset = placementStart * scrollItemSize - scroll;
+
+        scroll = Math.max(0, placementStart * itemSize - anchorOffset);
+    }
+
+    /**
+     * Returns the frame of the item in pixels from the start of the content, or null if it isn't placed.
+     * The rect is reused by the next call.
+     */
+    @Nullable
+    private Rect getFrame(int position) {
+        RectsHelper rectsHelper = this.rectsHelper;
+        Rect rect = rectsHelper != null ? rectsHelper.getPlacedRect(position) : null;
+
+        return rect != null ? getFrame(rect) : null;
+    }
+
+    /**
+     * Returns the frame of the placement in pixels from the start of the content. The rect is reused by the
+     * next call.
+     */
+    private Rect getFrame(Rect rect) {
+        int itemSize = rectsHelper.getItemSize();
+        frame.set(rect.left * itemSize, rect.top * itemSize, rect.right * itemSize, rect.bottom * itemSize);
+
+        return frame;
+    }
+
+    /**
+     * Schedules the visibility of the attached items to be checked on the next frame, once however many
+     * times the edges change before it. Nothing can be posted until the manager is attached to a window,
+     * it's checked again when it is.
+     */
+    private void invalidateVisibility() {
+        if (visibilityListener == null || visibilityChangesPending || !isAttachedToWindow()) return;
+
+        visibilityChangesPending = true;
+        postOnAnimation(dispatchVisibilityChangesRunnable);
+    }
+
+    private void dispatchVisibilityChanges() {
+        visibilityChangesPending = false;
+
+        VisibilityListener visibilityListener = this.visibilityListener;
+
+        // The layout applying the changes dispatches again when it completes
+        if (visibilityListener == null || adapterChangesPending) return;
+
+        int viewportLeft = getPaddingLeft();
+        int viewportTop = getPaddingTop();
+        int viewportRight = getWidth() - getPaddingRight();
+        int viewportBottom = getHeight() - getPaddingBottom();
+
+        int offsetX = getFrameOffsetX();
+        int offsetY = getFrameOffsetY();
+
+        for (int i = 0; i < getChildCount(); i++) {
+            int position = getPosition(getChildAt(i));
+            Rect frame = getFrame(position);
+
+            if (frame == null || frame.isEmpty()) continue;
+
+            int width = Math.min(frame.right + offsetX, viewportRight) - Math.max(frame.left + offsetX, viewportLeft);
+            int height = Math.min(frame.bottom + offsetY, viewportBottom) - Math.max(frame.top + offsetY, viewportTop);
+
+            if (width > 0 && height > 0) {
+                float fraction = (float) ((long) width * height) / ((long) frame.width() * frame.height());
+                visibilityTracker.add(position, fraction);
+            }
+        }
+
+        VisibilityChanges changes = visibilityTracker.update();
+
+        if (!changes.isEmpty()) {
+            visibilityListener.onVisibilityChanged(changes);
+        }
+    }
+
+    /**
+     * Returns the first item that ends in the visible area. Items are packed up to it if needed.
+     */
+    private int findAnchorPosition(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        int itemSize = rectsHelper.getItemSize();
+        int visibleStart = scroll - getPaddingStartForOrientation();
+
+        if (itemSize <= 0 || visibleStart <= 0) return 0;
+
+        int offset = visibleStart / itemSize;
+        int position = rectsHelper.findFirstPositionEndingAfter(offset);
+
+        while (position == rectsHelper.getPackedCount() && position < state.getItemCount()) {
+            if (!packUpTo(position + 1, recycler)) return 0;
+
+            position = rectsHelper.findFirstPositionEndingAfter(offset);
+        }
+
+        // All the items end before the visible area, it's fixed when the layout completes
+        if (position >= state.getItemCount()) return 0;
+
+        return position;
+    }
+
+    private void restoreCachedPlacements() {
+        PlacementCache placementCache = this.placementCache;
+        SpanSizeLookup spanSizeLookup = this.spanSizeLookup;
+
+        // Cached placements are packed without sections
+        if (placementCache == null || spanSizeLookup == null || sectionLookup != null) return;
+
+        PlacementCache.Placements placements = placementCache.find(spans, orientation, spanSizeLookup, getItemCount());
+
+        if (placements != null) {
+            rectsHelper.restorePlacements(placements);
+            publishedPlacements = placements.count;
+        }
+    }
+
+    private void publishPlacements() {
+        PlacementCache placementCache = this.placementCache;
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        if (placementCache == null || rectsHelper == null || sectionLookup != null || rectsHelper.getPackedCount() <= publishedPlacements) return;
+
+        placementCache.put(rectsHelper.getPlacements());
+        publishedPlacements = rectsHelper.getPackedCount();
+    }
+
+    /**
+     * Pre-layout of predictive animations: lays out the items at their placements before the changes, which
+     * are still the packed ones as the change set isn't applied yet. The items that will move into the
+     * visible area in place of the removed ones are laid out too, so they're animated from where they were.
+     * Nothing is packed here, items without a known placement are left to the default animations.
+     * <p>
+     * Removals of items that weren't attached are already applied to the positions here, so they're mapped
+     * back to the positions the placements were packed at.
+     */
+    private void layoutBeforeChanges(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        if (rectsHelper == null || getChildCount() == 0 || pendingScrollToPosition != null
+                || !rectsHelper.isPackedFor(spans, orientation) || rectsHelper.getItemSize() != scrollItemSize) {
+            return;
+        }
+
+        int firstPosition = getFirstVisiblePosition();
+        Rect firstRect = getPlacedRectBeforeChanges(firstPosition);
+
+        // The attached children are left as they are, so the animations still start from them
+        if (firstRect == null) return;
+
+        packingStats.preLayoutPasses++;
+
+        int extraSpace = 0;
+
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) child.getLayoutParams();
+
+            if (layoutParams.isItemRemoved() || layoutParams.isItemChanged()) {
+                extraSpace += orientation == Orientation.VERTICAL ?
+                        getDecoratedMeasuredHeight(child) : getDecoratedMeasuredWidth(child);
+            }
+        }
+
+        detachAndScrapAttachedViews(recycler);
+
+        layoutStart = getPlacementStart(firstRect) * rectsHelper.getItemSize() + getPaddingStartForOrientation();
+        layoutEnd = layoutStart;
+
+        int limit = getPaddingStartForOrientation() + scroll + getSize() + extraSpace;
+
+        for (int position = firstPosition; position < state.getItemCount() && canAddMoreViews(Direction.END, limit); position++) {
+            Rect rect = getPlacedRectBeforeChanges(position);
+            if (rect == null) break;
+
+            View view = recycler.getViewForPosition(position);
+            measureChild(view, rect);
+            layoutDecoratedAtFrame(view, getFrame(rect));
+            updateEdgesWithNewChild(view);
+            addView(view);
+        }
+    }
+
+    @Nullable
+    private Rect getPlacedRectBeforeChanges(int position) {
+        int oldPosition = pendingUpdates.getOldPosition(position);
+
+        return oldPosition >= 0 ? rectsHelper.getPlacedRect(oldPosition) : null;
+    }
+
+    /**
+     * Post-layout of predictive animations: the views left in scrap were laid out in the pre-layout but not
+     * in this one, so they're moving out of the visible area. They're laid out at their placements after the
+     * changes, if those are known, for the item animator to move them there. Removed items fade out where
+     * they are.
+     */
+    private void layoutDisappearingViews(RecyclerView.Recycler recycler) {
+        List<RecyclerView.ViewHolder> scrapList = recycler.getScrapList();
+
+        // Adding a view takes it out of the scrap, so go from the end
+        for (int i = scrapList.size() - 1; i >= 0; i--) {
+            View view = scrapList.get(i).itemView;
+            RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) view.getLayoutParams();
+
+            if (layoutParams.isItemRemoved()) continue;
+
+            int position = layoutParams.getViewLayoutPosition();
+            Rect rect = rectsHelper.getPlacedRect(position);
+
+            if (rect == null) continue;
+
+            packingStats.disappearingPlacements++;
+
+            addDisappearingView(view);
+            measureChild(view, rect);
+            layoutDecoratedAtFrame(view, getFrame(position));
+        }
+    }
+
+    /**
+     * Applies the adapter changes received since the last layout pass and returns the first updated item
+     * whose span size is left to be checked when it's measured.
+     */
+    private int applyPendingUpdates(RecyclerView.Recycler recycler, int firstVisiblePosition) {
+        if (pendingUpdates.isEmpty()) return Integer.MAX_VALUE;
+
+        int firstUnresolvedUpdate = Integer.MAX_VALUE;
+
+        packingStats.changeSets++;
+
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        updateSpanPackers();
+
+        if (rectsHelper == null || pendingUpdates.invalidatesAll()) {
+            this.rectsHelper = null;
+        } else {
+            // Without a lookup only the items before the visible ones are bound to check them,
+            // the rest are measured in order anyway. Updates can't be checked for section changes,
+            // so with sections all of them are placed again without binding anything.
+            SectionLookup sectionLookup = this.sectionLookup;
+            int limit = spanSizeLookup != null || sectionLookup != null ? Integer.MAX_VALUE : firstVisiblePosition;
+
+            firstUnresolvedUpdate = pendingUpdates.resolveUpdates(limit, (position, oldPosition) -> {
+                Rect rect = rectsHelper.getPlacedRect(oldPosition);
+                if (rect == null) return false;
+                if (sectionLookup != null) return true;
+
+                SpanSize spanSize = getSpanSize(position, recycler);
+                return rect.width() != spanSize.width || rect.height() != spanSize.height;
+            });
+
+            if (pendingUpdates.hasWindow() && pendingUpdates.getStart() >= rectsHelper.getPackedCount()) {
+                // Items were added after the packed ones, they are packed when they are reached
+                packingStats.appendChangeSets++;
+            }
+
+            if (pendingUpdates.hasWindow()) {
+                rectsHelper.invalidate(pendingUpdates.getStart(), pendingUpdates.getEnd(), pendingUpdates.getShift());
+
+                // Placements after the changes differ from the published ones
+                publishedPlacements = Math.min(publishedPlacements, pendingUpdates.getStart());
+            }
+        }
+
+        pendingUpdates.clear();
+
+        return firstUnresolvedUpdate;
+    }
+
+    /**
+     * Applies the change set to the packers kept for other span counts, whether or not the current count
+     * has one. Span sizes of updated items can't be checked against them, so they're dropped if there are any.
+     */
+    private void updateSpanPackers() {
+        if (spanPackers.isEmpty()) return;
+
+        if (pendingUpdates.invalidatesAll() || pendingUpdates.hasUpdatedItems()) {
+            spanPackers.clear();
+        } else if (pendingUpdates.hasWindow()) {
+            for (RectsHelper spanPacker : spanPackers.values()) {
+                spanPacker.invalidate(pendingUpdates.getStart(), pendingUpdates.getEnd(), pendingUpdates.getShift());
+            }
+        }
+    }
+
+    @Override
+    public void onItemsAdded(@NonNull RecyclerView recyclerView, int positionStart, int itemCount) {
+        packingStats.coalescedUpdates++;
+        pendingUpdates.onItemsAdded(positionStart, itemCount);
+
+        adapterChangesPending = true;
+        visibilityTracker.onItemsAdded(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsRemoved(@NonNull RecyclerView recyclerView, int positionStart, int itemCount) {
+        packingStats.coalescedUpdates++;
+        pendingUpdates.onItemsRemoved(positionStart, itemCount);
+
+        adapterChangesPending = true;
+        visibilityTracker.onItemsRemoved(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsMoved(@NonNull RecyclerView recyclerView, int from, int to, int itemCount) {
+        packingStats.coalescedUpdates++;
+
+        adapterChangesPending = true;
+        visibilityTracker.onItemsMoved(from, to, itemCount);
+
+        RectsHelper rectsHelper = this.rectsHelper;
+        int start = Math.min(from, to);
+        int end = Math.max(from, to);
+
+        if (itemCount == 1 && rectsHelper != null && pendingUpdates.keepsPositions(start, end) && rectsHelper.keepsPlacementsOnMove(start, end)) {
+            // Moving among items of the same span size, without sections, leaves all the placements as they are
+            packingStats.skippedMoves++;
+            return;
+        }
+
+        pendingUpdates.onItemsMoved(from, to, itemCount);
+    }
+
+    @Override
+    public void onItemsUpdated(@NonNull RecyclerView recyclerView, int positionStart, int itemCount) {
+        packingStats.coalescedUpdates++;
+        pendingUpdates.onItemsUpdated(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsChanged(@NonNull RecyclerView recyclerView) {
+        packingStats.coalescedUpdates++;
+        pendingUpdates.onItemsChanged();
+
+        adapterChangesPending = true;
+        visibilityTracker.reset();
+    }
+
+    @Override
+    public void onAdapterChanged(@Nullable RecyclerView.Adapter oldAdapter, @Nullable RecyclerView.Adapter newAdapter) {
+        pendingUpdates.onItemsChanged();
+
+        adapterChangesPending = true;
+        visibilityTracker.reset();
+    }
+
+    @Override
+    public void onAttachedToWindow(RecyclerView view) {
+        super.onAttachedToWindow(view);
+
+        visibilityChangesPending = false;
+        invalidateVisibility();
+    }
+
+    @Override
+    public void onDetachedFromWindow(RecyclerView view, RecyclerView.Recycler recycler) {
+        super.onDetachedFromWindow(view, recycler);
+
+        publishPlacements();
+
+        removeCallbacks(dispatchVisibilityChangesRunnable);
+        visibilityChangesPending = false;
     }
 
     @Override
     public void onLayoutCompleted(RecyclerView.State state) {
         super.onLayoutCompleted(state);
 
+        adapterChangesPending = false;
+        invalidateVisibility();
+
         // Check if after changes in layout we aren't out of its bounds
         int overScroll = scroll + getSize() - layoutEnd - getPaddingEndForOrientation();
         boolean allItemsInScreen = getFirstVisiblePosition() == 0 && getLastVisiblePosition() == state.getItemCount() - 1;
@@ -130,12 +807,13 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
     }
 
-    private void measureChild(int position, View view) {
+    /**
+     * Measures the child to fill its placement, packing it if needed, and returns whether that placement
+     * differs from the one it was packed with.
+     */
+    private boolean measureChild(int position, View view) {
         RectsHelper freeRectsHelper = this.rectsHelper;
 
-        int itemWidth = freeRectsHelper.getItemSize();
-        int itemHeight = freeRectsHelper.getItemSize();
-
         if (!(view.getLayoutParams() instanceof SpanLayoutParams)) {
             throw new ClassCastException("View LayoutParams must be of type 'SpanLayoutParams'");
         }
@@ -144,15 +822,36 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
         SpanSize spanSize = layoutParams.spanSize;
 
-        int usedSpan = orientation == Orientation.HORIZONTAL ? spanSize.height : spanSize.width;
-
-        if (usedSpan > this.spans || usedSpan < 1) {
-            throw new InvalidSpanSizeException(usedSpan, spans);
-        }
+        checkSpanSize(spanSize);
 
         // This rect contains just the row and column number - i.e.: [0, 0, 1, 1]
         Rect rect = freeRectsHelper.findRect(position, spanSize);
 
+        boolean replaced = rect.width() != spanSize.width || rect.height() != spanSize.height;
+
+        if (replaced) {
+            // Span size changed after the item was placed, so it and the items after it are placed again
+            freeRectsHelper.invalidate(position, position + 1, 0);
+            rect = freeRectsHelper.findRect(position, spanSize);
+        }
+
+        measureChild(view, rect);
+
+        // Remove free space from the helper
+        freeRectsHelper.pushRect(position, rect);
+
+        return replaced;
+    }
+
+    /**
+     * Measures the child to fill the placement.
+     */
+    private void measureChild(View view, Rect rect) {
+        int itemWidth = rectsHelper.getItemSize();
+        int itemHeight = rectsHelper.getItemSize();
+
+        SpanLayoutParams layoutParams = ((SpanLayoutParams) view.getLayoutParams());
+
         // Multiply the rect for item width and height to get positions
         int left = rect.left * itemWidth;
         int right = rect.right * itemWidth;
@@ -168,41 +867,259 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
         layoutParams.width = width;
         layoutParams.height = height;
         measureChildWithMargins(view, width, height);
+    }
 
-        // Remove free space from the helper
-        freeRectsHelper.pushRect(position, rect);
+    private void checkSpanSize(SpanSize spanSize) {
+        int usedSpan = orientation == Orientation.HORIZONTAL ? spanSize.height : spanSize.width;
 
-        // Cache rect
-        childFrames.put(position, new Rect(left, top, right, bottom));
+        if (usedSpan > this.spans || usedSpan < 1) {
+            throw new InvalidSpanSizeException(usedSpan, spans);
+        }
     }
 
-    private void layoutChild(int position, View view) {
-        Rect frame = childFrames.get(position);
+    /**
+     * Returns the placement of the item in spans, packing items up to it with the
+     * {@link SpanSizeLookup} if needed, or null if it can't be known without binding.
+     */
+    @Nullable
+    Rect findPlacement(int position) {
+        if (rectsHelper == null || position < 0 || position >= getItemCount()) return null;
 
-        if (frame != null) {
-            int scroll = this.scroll;
+        if (!packUpTo(position + 1, null)) return null;
 
-            int startPadding = getPaddingStartForOrientation();
+        return rectsHelper.getRect(position);
+    }
 
-            if (orientation == Orientation.VERTICAL) {
-                layoutDecorated(view,
-                        frame.left + getPaddingLeft(),
-                        frame.top - scroll + startPadding,
-                        frame.right + getPaddingLeft(),
-                        frame.bottom - scroll + startPadding);
-            } else {
-                layoutDecorated(view,
-                        frame.left - scroll + startPadding,
-                        frame.top + getPaddingTop(),
-                        frame.right - scroll + startPadding,
-                        frame.bottom + getPaddingTop());
+    /**
+     * Sets the frame of the item, in the coordinates its views are laid out in, to the rect. Works for
+     * items that aren't attached too, but without a {@link SpanSizeLookup} only the items laid out before are
+     * known. Returns false if the item's placement isn't known.
+     */
+    public boolean getFrameForPosition(int position, @NonNull Rect outFrame) {
+        Rect placement = findPlacement(position);
+
+        if (placement == null) return false;
+
+        int itemSize = rectsHelper.getItemSize();
+        outFrame.set(placement.left * itemSize, placement.top * itemSize, placement.right * itemSize, placement.bottom * itemSize);
+
+        outFrame.offset(getFrameOffsetX(), getFrameOffsetY());
+
+        return true;
+    }
+
+    /**
+     * Returns the item under the point, in the coordinates views are laid out in, or
+     * {@link RecyclerView#NO_POSITION} if there is none. Works for items that aren't attached too.
+     */
+    public int findPositionAt(int x, int y) {
+        if (!toSpans(x, y, x + 1, y + 1, spanArea)) return RecyclerView.NO_POSITION;
+
+        int position = rectsHelper.findPositionAt(spanArea.left, spanArea.top);
+
+        return position >= 0 ? position : RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * Adds the items intersecting the rect, in the coordinates views are laid out in, to the list in
+     * adapter order. Works for items that aren't attached too.
+     */
+    public void findPositionsIntersecting(@NonNull Rect rect, @NonNull IntList outPositions) {
+        if (!toSpans(rect.left, rect.top, rect.right, rect.bottom, spanArea)) return;
+
+        rectsHelper.findPositionsIntersecting(spanArea, outPositions);
+    }
+
+    // Views are laid out at their frames offset by the paddings and the scroll
+    private int getFrameOffsetX() {
+        return getPaddingLeft() - (orientation == Orientation.HORIZONTAL ? scroll : 0);
+    }
+
+    private int getFrameOffsetY() {
+        return getPaddingTop() - (orientation == Orientation.VERTICAL ? scroll : 0);
+    }
+
+    /**
+     * Converts the area in pixels to the cells it covers in spans, and packs the items that may be placed
+     * in them with the {@link SpanSizeLookup}. Returns false if it's empty or nothing is packed.
+     */
+    private boolean toSpans(int left, int top, int right, int bottom, Rect outArea) {
+        RectsHelper rectsHelper = this.rectsHelper;
+        if (rectsHelper == null) return false;
+
+        int itemSize = rectsHelper.getItemSize();
+        if (itemSize <= 0) return false;
+
+        int offsetX = getFrameOffsetX();
+        int offsetY = getFrameOffsetY();
+
+        left -= offsetX;
+        right -= offsetX;
+        top -= offsetY;
+        bottom -= offsetY;
+
+        if (right <= 0 || bottom <= 0 || left >= right || top >= bottom) return false;
+
+        outArea.set(Math.max(0, left) / itemSize, Math.max(0, top) / itemSize,
+                (right + itemSize - 1) / itemSize, (bottom + itemSize - 1) / itemSize);
+
+        int end = orientation == Orientation.VERTICAL ? outArea.bottom : outArea.right;
+
+        // Items packed later may still fill gaps before the end, until the free space starts after it
+        while (rectsHelper.getFreeStart() < end && rectsHelper.getPackedCount() < getItemCount()) {
+            if (!packUpTo(rectsHelper.getPackedCount() + 1, null)) break;
+        }
+
+        return true;
+    }
+
+    /**
+     * Packs the items before the given position. Without a {@link SpanSizeLookup} span sizes are read from
+     * bound views, so nothing is packed if no recycler is given.
+     */
+    private boolean packUpTo(int position, @Nullable RecyclerView.Recycler recycler) {
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        // Items are packed in adapter order, so all items before the one needed have to be placed too
+        for (int i = rectsHelper.getPackedCount(); i < position; i++) {
+            SpanSize spanSize = getSpanSize(i, recycler);
+
+            if (spanSize == null) return false;
+
+            checkSpanSize(spanSize);
+            rectsHelper.pushRect(i, rectsHelper.findRect(i, spanSize));
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private SpanSize getSpanSize(int position, @Nullable RecyclerView.Recycler recycler) {
+        if (spanSizeLookup != null) return spanSizeLookup.getSpanSize(position);
+
+        if (recycler == null) return null;
+
+        View view = findViewByPosition(position);
+        boolean isAttached = view != null;
+
+        if (!isAttached) {
+            view = recycler.getViewForPosition(position);
+        }
+
+        if (!(view.getLayoutParams() instanceof SpanLayoutParams)) {
+            throw new ClassCastException("View LayoutParams must be of type 'SpanLayoutParams'");
+        }
+
+        SpanSize spanSize = ((SpanLayoutParams) view.getLayoutParams()).spanSize;
+
+        if (!isAttached) {
+            recycler.recycleView(view);
+        }
+
+        return spanSize;
+    }
+
+    private int getPlacementStart(Rect placement) {
+        if (orientation == Orientation.VERTICAL) {
+            return placement.top;
+        } else {
+            return placement.left;
+        }
+    }
+
+    /**
+     * Returns the distance in pixels to scroll for the item to reach the start of the layout,
+     * or null if the item placement is unknown.
+     */
+    @Nullable
+    Integer getDistanceToPosition(int position) {
+        Rect placement = findPlacement(position);
+
+        if (placement == null) return null;
+
+        return getPlacementStart(placement) * rectsHelper.getItemSize() - scroll;
+    }
+
+    /**
+     * Returns the position a screen away from the target in the opposite of the scroll direction,
+     * or {@link RecyclerView#NO_POSITION} if jumping there would need binding all the items before it.
+     * Without a {@link SpanSizeLookup} it's only found for the items packed already.
+     */
+    int findSmoothScrollJumpPosition(int targetPosition, int direction) {
+        Rect target = findPlacement(targetPosition);
+
+        if (target == null) return RecyclerView.NO_POSITION;
+
+        int itemSize = rectsHelper.getItemSize();
+        int targetStart = getPlacementStart(target) * itemSize;
+        int packedCount = rectsHelper.getPackedCount();
+
+        int position = targetPosition;
+
+        while (position - direction >= 0 && position - direction < packedCount) {
+            int start = getPlacementStart(rectsHelper.getRect(position - direction)) * itemSize;
+
+            if (Math.abs(targetStart - start) >= getSize()) {
+                break;
             }
+
+            position -= direction;
+        }
+
+        return position;
+    }
+
+    private void layoutChild(int position, View view) {
+        Rect frame = getFrame(position);
+
+        if (frame != null) {
+            layoutDecoratedAtFrame(view, frame);
         }
 
         // A new child was layouted, layout edges change
         updateEdgesWithNewChild(view);
     }
 
+    private void layoutDecoratedAtFrame(View view, Rect frame) {
+        int scroll = this.scroll;
+
+        int startPadding = getPaddingStartForOrientation();
+
+        if (orientation == Orientation.VERTICAL) {
+            layoutDecorated(view,
+                    frame.left + getPaddingLeft(),
+                    frame.top - scroll + startPadding,
+                    frame.right + getPaddingLeft(),
+                    frame.bottom - scroll + startPadding);
+        } else {
+            layoutDecorated(view,
+                    frame.left - scroll + startPadding,
+                    frame.top + getPaddingTop(),
+                    frame.right - scroll + startPadding,
+                    frame.bottom + getPaddingTop());
+        }
+    }
+
+    /**
+     * Places the attached items after the position again in order, within the same pass, and recomputes the
+     * layout end from the children as they may end earlier now.
+     */
+    private void relayoutChildrenAfter(int position) {
+        layoutEnd = layoutStart;
+
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            int childPosition = getPosition(child);
+
+            if (childPosition > position) {
+                measureChild(childPosition, child);
+                layoutChild(childPosition, child);
+            } else {
+                updateEdgesWithNewChild(child);
+            }
+        }
+    }
+
     private void recycleChildrenOutOfBounds(Direction direction, RecyclerView.Recycler recycler) {
         if (direction == Direction.END) {
             recycleChildrenFromStart(direction, recycler);
@@ -213,6 +1130,8 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
     }
 
     private void recycleChildrenFromEnd(Direction direction, RecyclerView.Recycler recycler) {
+        invalidateVisibility();
+
         int childCount = getChildCount();
         int end = getSize() + getPaddingEndForOrientation();
 
@@ -239,6 +1158,8 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
     }
 
     private void recycleChildrenFromStart(Direction direction, RecyclerView.Recycler recycler) {
+        invalidateVisibility();
+
         int childCount = getChildCount();
         int start = 0;
 
@@ -264,6 +1185,8 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
     }
 
     private void fillGap(Direction direction, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        invalidateVisibility();
+
         int firstPosition = getFirstVisiblePosition();
 
         int extraSpace = direction == Direction.START && firstPosition == 0 ? 0 : getSize();
@@ -361,8 +1284,10 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
 
     private View makeAndAddView(int position, Direction direction, RecyclerView.Recycler recycler) {
+        packUpTo(position, recycler);
+
         View view = recycler.getViewForPosition(position);
-        measureChild(position, view);
+        boolean replaced = measureChild(position, view);
         layoutChild(position, view);
 
         if (direction == Direction.END) {
@@ -371,6 +1296,11 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
             addView(view, 0);
         }
 
+        if (replaced && getLastVisiblePosition() > position) {
+            // Attached items after it were laid out with stale placements
+            relayoutChildrenAfter(position);
+        }
+
         return view;
 
     }
@@ -437,21 +1367,71 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
     @Override
     public int computeVerticalScrollOffset(RecyclerView.State state) {
-        if (getChildCount() == 0) {
-            return 0;
-        }
-
-        return getFirstVisiblePosition();
+        return orientation == Orientation.VERTICAL ? computeScrollOffset() : 0;
     }
 
     @Override
     public int computeVerticalScrollExtent(RecyclerView.State state) {
-        return getChildCount();
+        return orientation == Orientation.VERTICAL ? computeScrollExtent() : 0;
     }
 
     @Override
     public int computeVerticalScrollRange(RecyclerView.State state) {
-        return state.getItemCount();
+        return orientation == Orientation.VERTICAL ? computeScrollRange(state.getItemCount()) : 0;
+    }
+
+    @Override
+    public int computeHorizontalScrollOffset(RecyclerView.State state) {
+        return orientation == Orientation.HORIZONTAL ? computeScrollOffset() : 0;
+    }
+
+    @Override
+    public int computeHorizontalScrollExtent(RecyclerView.State state) {
+        return orientation == Orientation.HORIZONTAL ? computeScrollExtent() : 0;
+    }
+
+    @Override
+    public int computeHorizontalScrollRange(RecyclerView.State state) {
+        return orientation == Orientation.HORIZONTAL ? computeScrollRange(state.getItemCount()) : 0;
+    }
+
+    private int computeScrollOffset() {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+
+        return scroll;
+    }
+
+    private int computeScrollExtent() {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+
+        return getSize();
+    }
+
+    /**
+     * Returns the size of the whole layout in pixels. The part of it after the packed items is estimated
+     * from the average size of the packed ones.
+     */
+    private int computeScrollRange(int itemCount) {
+        RectsHelper rectsHelper = this.rectsHelper;
+
+        if (getChildCount() == 0 || rectsHelper == null || rectsHelper.getPackedCount() == 0) {
+            return 0;
+        }
+
+        int packedCount = rectsHelper.getPackedCount();
+        long end = rectsHelper.getPackedEnd();
+
+        if (packedCount < itemCount) {
+            end += (itemCount - packedCount) * end / packedCount;
+        }
+
+        long range = end * rectsHelper.getItemSize() + getPaddingStartForOrientation() + getPaddingEndForOrientation();
+
+        return (int) Math.min(range, Integer.MAX_VALUE);
     }
 
     @Override
@@ -469,6 +1449,11 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
         return scrollBy(dx, recycler, state);
     }
 
+    @Override
+    public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        return scrollBy(dy, recycler, state);
+    }
+
     private int scrollBy(int delta, RecyclerView.Recycler recycler, RecyclerView.State state) {
         // If there are no view or no movement, return
         if (delta == 0) {
@@ -490,6 +1475,9 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
         scrollBy(-delta, state);
 
+        // Items at the edges are partly visible, so their visible fractions change with any scroll
+        invalidateVisibility();
+
         Direction direction = delta > 0 ? Direction.END : Direction.START;
 
         recycleChildrenOutOfBounds(direction, recycler);
@@ -512,51 +1500,86 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
     @Override
     public void scrollToPosition(int position) {
         pendingScrollToPosition = position;
+        pendingScrollOffset = null;
 
         requestLayout();
     }
 
-    @Override
-    public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
-        RecyclerView.SmoothScroller smoothScroller = new LinearSmoothScroller(recyclerView.getContext()) {
-            @Nullable
-            @Override
-            public PointF computeScrollVectorForPosition(int targetPosition) {
-                if (getChildCount() == 0) {
-                    return null;
-                }
+    /**
+     * Scrolls to the offset in pixels from the start of the layout, as reported by the scroll offset.
+     * Only the items around the offset are laid out.
+     */
+    public void scrollToOffset(int offset) {
+        pendingScrollOffset = Math.max(offset, 0);
+        pendingScrollToPosition = null;
 
-                int direction = targetPosition < getFirstVisiblePosition() ? -1 : 1;
-                return new PointF(0f, direction);
-            }
+        requestLayout();
+    }
 
-            @Override
-            protected int getVerticalSnapPreference() {
-                return LinearSmoothScroller.SNAP_TO_START;
-            }
-        };
+    /**
+     * Scrolls to the fraction of the scroll range, from 0 at the start to 1 at the end.
+     */
+    public void scrollToFraction(float fraction) {
+        float clampedFraction = Math.max(0f, Math.min(fraction, 1f));
+        int scrollableRange = computeScrollRange(getItemCount()) - getSize();
+
+        scrollToOffset(Math.round(clampedFraction * Math.max(scrollableRange, 0)));
+    }
+
+    @Override
+    public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
+        RecyclerView.SmoothScroller smoothScroller = new SpannedSmoothScroller(recyclerView.getContext(), this);
 
         smoothScroller.setTargetPosition(position);
         startSmoothScroll(smoothScroller);
     }
 
+    @Nullable
+    @Override
+    public PointF computeScrollVectorForPosition(int targetPosition) {
+        if (getChildCount() == 0) {
+            return null;
+        }
+
+        Integer distance = getDistanceToPosition(targetPosition);
+
+        int direction;
+        if (distance != null) {
+            direction = distance < 0 ? -1 : 1;
+        } else {
+            direction = targetPosition < getFirstVisiblePosition() ? -1 : 1;
+        }
+
+        if (orientation == Orientation.VERTICAL) {
+            return new PointF(0f, direction);
+        } else {
+            return new PointF(direction, 0f);
+        }
+    }
+
     @Override
     public int getDecoratedMeasuredWidth(View child) {
-        int position = getPosition(child);
-        return childFrames.get(position).width();
+        Rect frame = getFrame(getPosition(child));
+        if (frame == null) return super.getDecoratedMeasuredWidth(child);
+
+        return frame.width();
     }
 
     @Override
     public int getDecoratedMeasuredHeight(View child) {
-        int position = getPosition(child);
-        return childFrames.get(position).height();
+        Rect frame = getFrame(getPosition(child));
+        if (frame == null) return super.getDecoratedMeasuredHeight(child);
+
+        return frame.height();
     }
 
     @Override
     public int getDecoratedTop(View child) {
-        int position = getPosition(child);
+        Rect frame = getFrame(getPosition(child));
+        if (frame == null) return super.getDecoratedTop(child);
+
         int decoration = getTopDecorationHeight(child);
-        int top = childFrames.get(position).top + decoration;
+        int top = frame.top + decoration;
 
         if (orientation == Orientation.VERTICAL) {
             top -= scroll;
@@ -567,9 +1590,11 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
     @Override
     public int getDecoratedRight(View child) {
-        int position = getPosition(child);
+        Rect frame = getFrame(getPosition(child));
+        if (frame == null) return super.getDecoratedRight(child);
+
         int decoration = getLeftDecorationWidth(child) + getRightDecorationWidth(child);
-        int right = childFrames.get(position).right + decoration;
+        int right = frame.right + decoration;
 
         if (orientation == Orientation.HORIZONTAL) {
             right -= scroll - getPaddingStartForOrientation();
@@ -580,9 +1605,11 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
     @Override
     public int getDecoratedLeft(View child) {
-        int position = getPosition(child);
+        Rect frame = getFrame(getPosition(child));
+        if (frame == null) return super.getDecoratedLeft(child);
+
         int decoration = getLeftDecorationWidth(child);
-        int left = childFrames.get(position).left + decoration;
+        int left = frame.left + decoration;
 
         if (orientation == Orientation.HORIZONTAL) {
             left -= scroll;
@@ -593,9 +1620,11 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
 
     @Override
     public int getDecoratedBottom(View child) {
-        int position = getPosition(child);
+        Rect frame = getFrame(getPosition(child));
+        if (frame == null) return super.getDecoratedBottom(child);
+
         int decoration = getTopDecorationHeight(child) + getBottomDecorationHeight(child);
-        int bottom = childFrames.get(position).bottom + decoration;
+        int bottom = frame.bottom + decoration;
 
         if (orientation == Orientation.VERTICAL) {
             bottom -= scroll - getPaddingStartForOrientation();
@@ -610,8 +1639,8 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
         int childCount = getChildCount();
 
         if (itemOrderIsStable && childCount > 0) {
-            int maxTopValue = ListUtils.<Integer>min(ListUtils.map(ListUtils.range(childCount), item -> getChildAt(item).getTop()));
-            int firstVisibleIndex = ListUtils.firstMatch(ListUtils.range(childCount), (it) -> getChildAt(it).getTop() == maxTopValue);
+            int maxTopValue = ListUtils.reduceRange(childCount, Integer.MAX_VALUE, (min, index) -> Math.min(min, getChildAt(index).getTop()));
+            int firstVisibleIndex = ListUtils.firstMatchInRange(childCount, (it) -> getChildAt(it).getTop() == maxTopValue);
 
             int firstVisibleItem = getPosition(getChildAt(firstVisibleIndex));
 
@@ -647,6 +1676,27 @@ public class SpannedGridLayoutManager extends RecyclerView.LayoutManager {
         }
     }
 
+    public interface SpanSizeLookup {
+        @NonNull
+        SpanSize getSpanSize(int position);
+    }
+
+    public interface VisibilityListener {
+        /**
+         * Called with the changes since the last call. They're reused afterwards, so they must not be kept.
+         * Positions follow adapter changes: moved items aren't reported again, removed ones aren't reported as
+         * hidden, and after a data set change the visible items aren't reported until they change.
+         */
+        void onVisibilityChanged(@NonNull VisibilityChanges changes);
+    }
+
+    public interface SectionLookup {
+        /**
+         * Returns true if the item starts a section, e.g. it's a full span header.
+         */
+        boolean isSectionStart(int position);
+    }
+
     public static final class SpanLayoutParams extends RecyclerView.LayoutParams {
         SpanSize spanSize;
 
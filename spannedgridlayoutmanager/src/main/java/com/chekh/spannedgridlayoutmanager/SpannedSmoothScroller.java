@@ -0,0 +1,72 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.LinearSmoothScroller;
+import android.support.v7.widget.RecyclerView;
+
+class SpannedSmoothScroller extends LinearSmoothScroller {
+    // Targets further than this are jumped close to instead of binding every item on the way
+    private static final int MAX_SCROLL_SCREENS = 3;
+
+    private final SpannedGridLayoutManager layoutManager;
+
+    SpannedSmoothScroller(Context context, SpannedGridLayoutManager layoutManager) {
+        super(context);
+        this.layoutManager = layoutManager;
+    }
+
+    @Nullable
+    @Override
+    public PointF computeScrollVectorForPosition(int targetPosition) {
+        return layoutManager.computeScrollVectorForPosition(targetPosition);
+    }
+
+    @Override
+    protected int getVerticalSnapPreference() {
+        return SNAP_TO_START;
+    }
+
+    @Override
+    protected int getHorizontalSnapPreference() {
+        return SNAP_TO_START;
+    }
+
+    @Override
+    protected void updateActionForInterimTarget(RecyclerView.SmoothScroller.Action action) {
+        int targetPosition = getTargetPosition();
+        Integer distance = layoutManager.getDistanceToPosition(targetPosition);
+
+        if (distance == null || distance == 0) {
+            // Target placement is unknown, seek towards it
+            super.updateActionForInterimTarget(action);
+            return;
+        }
+
+        int direction = distance > 0 ? 1 : -1;
+
+        if (Math.abs(distance) > MAX_SCROLL_SCREENS * layoutManager.getSize()) {
+            int jumpPosition = layoutManager.findSmoothScrollJumpPosition(targetPosition, direction);
+
+            if (jumpPosition != RecyclerView.NO_POSITION) {
+                action.jumpTo(jumpPosition);
+                return;
+            }
+        }
+
+        PointF scrollVector = computeScrollVectorForPosition(targetPosition);
+
+        if (scrollVector == null) {
+            super.updateActionForInterimTarget(action);
+            return;
+        }
+
+        mTargetVector = scrollVector;
+        mInterimTargetDx = (int) (Math.abs(distance) * scrollVector.x);
+        mInterimTargetDy = (int) (Math.abs(distance) * scrollVector.y);
+
+        int time = calculateTimeForScrolling(Math.abs(distance));
+        action.update(mInterimTargetDx, mInterimTargetDy, time, mLinearInterpolator);
+    }
+}
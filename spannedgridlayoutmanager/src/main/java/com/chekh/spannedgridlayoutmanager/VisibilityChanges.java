@@ -0,0 +1,99 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import java.util.Arrays;
+
+/**
+ * Items whose visibility changed since the last batch, with the fraction of their area inside the padded
+ * viewport. The same instance is reused for every batch, so it must not be kept after the callback returns.
+ */
+public final class VisibilityChanges {
+    private final IntList shownPositions = new IntList();
+    private float[] shownFractions = new float[16];
+    private final IntList changedPositions = new IntList();
+    private float[] changedFractions = new float[16];
+    private final IntList hiddenPositions = new IntList();
+
+    VisibilityChanges() {
+    }
+
+    public boolean isEmpty() {
+        return shownPositions.isEmpty() && changedPositions.isEmpty() && hiddenPositions.isEmpty();
+    }
+
+    /**
+     * Items that became visible.
+     */
+    public int getShownCount() {
+        return shownPositions.size();
+    }
+
+    public int getShownPosition(int index) {
+        return shownPositions.get(index);
+    }
+
+    public float getShownFraction(int index) {
+        return shownFractions[index];
+    }
+
+    /**
+     * Items that stayed visible with a different visible fraction.
+     */
+    public int getChangedCount() {
+        return changedPositions.size();
+    }
+
+    public int getChangedPosition(int index) {
+        return changedPositions.get(index);
+    }
+
+    public float getChangedFraction(int index) {
+        return changedFractions[index];
+    }
+
+    /**
+     * Items that are no longer visible.
+     */
+    public int getHiddenCount() {
+        return hiddenPositions.size();
+    }
+
+    public int getHiddenPosition(int index) {
+        return hiddenPositions.get(index);
+    }
+
+    void addShown(int position, float fraction) {
+        shownFractions = set(shownFractions, shownPositions.size(), fraction);
+        shownPositions.add(position);
+    }
+
+    void addChanged(int position, float fraction) {
+        changedFractions = set(changedFractions, changedPositions.size(), fraction);
+        changedPositions.add(position);
+    }
+
+    void addHidden(int position) {
+        hiddenPositions.add(position);
+    }
+
+    void clear() {
+        shownPositions.clear();
+        changedPositions.clear();
+        hiddenPositions.clear();
+    }
+
+    static float[] set(float[] array, int index, float value) {
+        if (index >= array.length) {
+            array = Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+        }
+
+        array[index] = value;
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return "VisibilityChanges(shown=" + shownPositions.size()
+                + ", changed=" + changedPositions.size()
+                + ", hidden=" + hiddenPositions.size() + ")";
+    }
+}
@@ -0,0 +1,148 @@
+package com.chekh.spannedgridlayoutmanager;
+
+/**
+ * Visible fractions of the items in the last two frames, diffed into {@link VisibilityChanges}. Buffers are
+ * swapped between frames, so nothing is allocated once they're large enough.
+ * <p>
+ * Items are tracked by adapter position, so the items of the last frame follow adapter changes. Otherwise
+ * items whose positions shifted would be reported as hidden and shown again.
+ */
+class VisibilityTracker {
+    private IntList positions = new IntList();
+    private float[] fractions = new float[16];
+    private IntList previousPositions = new IntList();
+    private float[] previousFractions = new float[16];
+    private final VisibilityChanges changes = new VisibilityChanges();
+    // Whether the next frame is recorded without being diffed
+    private boolean seeding = false;
+
+    /**
+     * Adds a visible item of the current frame.
+     */
+    void add(int position, float fraction) {
+        fractions = VisibilityChanges.set(fractions, positions.size(), fraction);
+        positions.add(position);
+    }
+
+    /**
+     * Diffs the items added since the last call against the ones added before it.
+     */
+    VisibilityChanges update() {
+        changes.clear();
+
+        if (seeding) {
+            seeding = false;
+        } else {
+            diff();
+        }
+
+        IntList positions = this.positions;
+        float[] fractions = this.fractions;
+
+        this.positions = previousPositions;
+        this.fractions = previousFractions;
+        this.positions.clear();
+
+        previousPositions = positions;
+        previousFractions = fractions;
+
+        return changes;
+    }
+
+    private void diff() {
+        for (int i = 0; i < positions.size(); i++) {
+            int position = positions.get(i);
+            int previousIndex = indexOf(previousPositions, position);
+
+            if (previousIndex < 0) {
+                changes.addShown(position, fractions[i]);
+            } else if (previousFractions[previousIndex] != fractions[i]) {
+                changes.addChanged(position, fractions[i]);
+            }
+        }
+
+        for (int i = 0; i < previousPositions.size(); i++) {
+            int position = previousPositions.get(i);
+
+            if (indexOf(positions, position) < 0) {
+                changes.addHidden(position);
+            }
+        }
+    }
+
+    /**
+     * Forgets the visible items, e.g. for a new listener, which is told about all of them again.
+     */
+    void clear() {
+        positions.clear();
+        previousPositions.clear();
+        seeding = false;
+    }
+
+    /**
+     * Forgets the visible items without reporting anything for the next frame, which becomes the one the
+     * following frames are diffed against. Used when positions can't be mapped to the items they were
+     * reported with, e.g. when the whole data set changed.
+     */
+    void reset() {
+        positions.clear();
+        previousPositions.clear();
+        seeding = true;
+    }
+
+    void onItemsAdded(int positionStart, int itemCount) {
+        for (int i = 0; i < previousPositions.size(); i++) {
+            int position = previousPositions.get(i);
+
+            if (position >= positionStart) {
+                previousPositions.set(i, position + itemCount);
+            }
+        }
+    }
+
+    /**
+     * Removed items are dropped without being reported as hidden, their positions don't refer to any item.
+     */
+    void onItemsRemoved(int positionStart, int itemCount) {
+        int kept = 0;
+
+        for (int i = 0; i < previousPositions.size(); i++) {
+            int position = previousPositions.get(i);
+
+            if (position >= positionStart + itemCount) {
+                position -= itemCount;
+            } else if (position >= positionStart) {
+                continue;
+            }
+
+            previousPositions.set(kept, position);
+            previousFractions[kept] = previousFractions[i];
+            kept++;
+        }
+
+        previousPositions.resize(kept);
+    }
+
+    void onItemsMoved(int from, int to, int itemCount) {
+        for (int i = 0; i < previousPositions.size(); i++) {
+            int position = previousPositions.get(i);
+
+            if (position >= from && position < from + itemCount) {
+                previousPositions.set(i, position - from + to);
+            } else if (from < to && position >= from + itemCount && position < to + itemCount) {
+                previousPositions.set(i, position - itemCount);
+            } else if (from > to && position >= to && position < from) {
+                previousPositions.set(i, position + itemCount);
+            }
+        }
+    }
+
+    // Only attached items are visible, so a linear search is cheap enough
+    private static int indexOf(IntList list, int value) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == value) return i;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,267 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.Orientation;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SectionLookup;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs items into placements in spans. Every engine has to place the items exactly where the first-fit
+ * packing of {@link Reference} does, {@link PackingFuzzer} compares them.
+ */
+interface PackingEngine {
+
+    /**
+     * Drops all the placements and starts packing for the given geometry and sections.
+     */
+    void reset(int spans, Orientation orientation, @Nullable SectionLookup sectionLookup);
+
+    /**
+     * Returns the placement of the item. Items are placed in adapter order from the first one after every
+     * reset and update, so the item before it is always placed.
+     */
+    Rect place(int position, SpanSize spanSize);
+
+    /**
+     * Applies the adapter changes, span sizes are the ones after the changes.
+     */
+    void update(PendingUpdates updates, List<SpanSize> spanSizes);
+
+    /**
+     * Notifies a move of a single item to the updates, unless it leaves all the placements as they are.
+     */
+    void onItemsMoved(PendingUpdates updates, int from, int to);
+
+    /**
+     * Packs every item from scratch after any change with a frozen copy of the first-fit packing the library
+     * started from, so it doesn't change along with {@link RectsHelper}. Sections are packed from a frontier
+     * after all the items before them.
+     */
+    final class Reference implements PackingEngine {
+        private final List<Rect> placements = new ArrayList<>();
+        private final List<Rect> freeRects = new ArrayList<>();
+        private int spans;
+        private Orientation orientation;
+        private SectionLookup sectionLookup;
+        private int packedEnd;
+
+        private final Comparator<Rect> rectComparator = (rect1, rect2) -> {
+            if (orientation == Orientation.VERTICAL) {
+                if (rect1.top == rect2.top) {
+                    return rect1.left < rect2.left ? -1 : 1;
+                } else {
+                    return rect1.top < rect2.top ? -1 : 1;
+                }
+            } else {
+                if (rect1.left == rect2.left) {
+                    return rect1.top < rect2.top ? -1 : 1;
+                } else {
+                    return rect1.left < rect2.left ? -1 : 1;
+                }
+            }
+        };
+
+        @Override
+        public void reset(int spans, Orientation orientation, @Nullable SectionLookup sectionLookup) {
+            this.spans = spans;
+            this.orientation = orientation;
+            this.sectionLookup = sectionLookup;
+            this.packedEnd = 0;
+
+            placements.clear();
+            freeRects.clear();
+            freeRects.add(createFrontier(0));
+        }
+
+        @Override
+        public Rect place(int position, SpanSize spanSize) {
+            if (position < placements.size()) return placements.get(position);
+
+            if (sectionLookup != null && position > 0 && sectionLookup.isSectionStart(position)) {
+                freeRects.clear();
+                freeRects.add(createFrontier(packedEnd));
+            }
+
+            Rect rect = findRectForSpanSize(spanSize);
+            subtract(rect);
+
+            placements.add(rect);
+            packedEnd = Math.max(packedEnd, orientation == Orientation.VERTICAL ? rect.bottom : rect.right);
+
+            return rect;
+        }
+
+        @Override
+        public void update(PendingUpdates updates, List<SpanSize> spanSizes) {
+            reset(spans, orientation, sectionLookup);
+        }
+
+        @Override
+        public void onItemsMoved(PendingUpdates updates, int from, int to) {
+            updates.onItemsMoved(from, to, 1);
+        }
+
+        private Rect createFrontier(int start) {
+            if (orientation == Orientation.VERTICAL) {
+                return new Rect(0, start, spans, Integer.MAX_VALUE);
+            } else {
+                return new Rect(start, 0, Integer.MAX_VALUE, spans);
+            }
+        }
+
+        private Rect findRectForSpanSize(SpanSize spanSize) {
+            for (Rect free : freeRects) {
+                Rect itemRect = new Rect(free.left, free.top, free.left + spanSize.width, free.top + spanSize.height);
+
+                if (free.contains(itemRect)) return itemRect;
+            }
+
+            throw new IllegalStateException("No free rect for " + spanSize.width + "x" + spanSize.height);
+        }
+
+        private void subtract(Rect subtractedRect) {
+            List<Rect> interestingRects = new ArrayList<>();
+
+            for (Rect free : freeRects) {
+                if (isAdjacentTo(free, subtractedRect) || intersects(free, subtractedRect)) {
+                    interestingRects.add(free);
+                }
+            }
+
+            List<Rect> possibleNewRects = new ArrayList<>();
+            List<Rect> adjacentRects = new ArrayList<>();
+
+            for (Rect free : interestingRects) {
+                if (isAdjacentTo(free, subtractedRect) && !subtractedRect.contains(free)) {
+                    adjacentRects.add(free);
+                } else {
+                    freeRects.remove(free);
+
+                    if (free.left < subtractedRect.left) { // Left
+                        possibleNewRects.add(new Rect(free.left, free.top, subtractedRect.left, free.bottom));
+                    }
+
+                    if (free.right > subtractedRect.right) { // Right
+                        possibleNewRects.add(new Rect(subtractedRect.right, free.top, free.right, free.bottom));
+                    }
+
+                    if (free.top < subtractedRect.top) { // Top
+                        possibleNewRects.add(new Rect(free.left, free.top, free.right, subtractedRect.top));
+                    }
+
+                    if (free.bottom > subtractedRect.bottom) { // Bottom
+                        possibleNewRects.add(new Rect(free.left, subtractedRect.bottom, free.right, free.bottom));
+                    }
+                }
+            }
+
+            for (Rect rect : possibleNewRects) {
+                if (containsOther(adjacentRects, rect) || containsOther(possibleNewRects, rect)) continue;
+
+                freeRects.add(rect);
+            }
+
+            Collections.sort(freeRects, rectComparator);
+        }
+
+        private static boolean containsOther(List<Rect> rects, Rect rect) {
+            for (Rect other : rects) {
+                if (other != rect && other.contains(rect)) return true;
+            }
+
+            return false;
+        }
+
+        private static boolean isAdjacentTo(Rect rect, Rect other) {
+            return other.right == rect.left
+                    || other.top == rect.bottom
+                    || other.left == rect.right
+                    || other.bottom == rect.top;
+        }
+
+        private static boolean intersects(Rect rect, Rect other) {
+            return rect.intersects(other.left, other.top, other.right, other.bottom);
+        }
+
+        @Override
+        public String toString() {
+            return "Reference";
+        }
+    }
+
+    /**
+     * Keeps the placements before the changes and restores the ones after them, like the layout manager does.
+     */
+    final class Incremental implements PackingEngine {
+        private final PackingStats packingStats = new PackingStats();
+        private SectionLookup sectionLookup;
+        private RectsHelper rectsHelper;
+
+        @Override
+        public void reset(int spans, Orientation orientation, @Nullable SectionLookup sectionLookup) {
+            this.sectionLookup = sectionLookup;
+            this.rectsHelper = new RectsHelper(spans, orientation, packingStats);
+            this.rectsHelper.setSectionLookup(sectionLookup);
+        }
+
+        @Override
+        public Rect place(int position, SpanSize spanSize) {
+            Rect rect = rectsHelper.findRect(position, spanSize);
+
+            if (rect.width() != spanSize.width || rect.height() != spanSize.height) {
+                rectsHelper.invalidate(position, position + 1, 0);
+                rect = rectsHelper.findRect(position, spanSize);
+            }
+
+            rectsHelper.pushRect(position, rect);
+            return rect;
+        }
+
+        @Override
+        public void update(PendingUpdates updates, List<SpanSize> spanSizes) {
+            RectsHelper rectsHelper = this.rectsHelper;
+
+            updates.resolveUpdates(Integer.MAX_VALUE, (position, oldPosition) -> {
+                Rect rect = rectsHelper.getPlacedRect(oldPosition);
+                if (rect == null) return false;
+
+                // Same as the layout manager, section starts before the update aren't known
+                if (sectionLookup != null) return true;
+
+                SpanSize spanSize = spanSizes.get(position);
+                return rect.width() != spanSize.width || rect.height() != spanSize.height;
+            });
+
+            if (updates.hasWindow()) {
+                rectsHelper.invalidate(updates.getStart(), updates.getEnd(), updates.getShift());
+            }
+        }
+
+        @Override
+        public void onItemsMoved(PendingUpdates updates, int from, int to) {
+            int start = Math.min(from, to);
+            int end = Math.max(from, to);
+
+            // Same check as the layout manager's
+            if (updates.keepsPositions(start, end) && rectsHelper.keepsPlacementsOnMove(start, end)) return;
+
+            updates.onItemsMoved(from, to, 1);
+        }
+
+        PackingStats getPackingStats() {
+            return packingStats;
+        }
+
+        @Override
+        public String toString() {
+            return "Incremental";
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.Orientation;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SectionLookup;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs random span counts, span sizes and adapter changes through a candidate {@link PackingEngine} and the
+ * reference one, and reports the first placement that differs along with the smallest case that still
+ * reproduces it. Time spent in each engine is recorded as well.
+ */
+final class PackingFuzzer {
+    private static final int MAX_SPANS = 6;
+    private static final int MAX_ITEMS = 120;
+    private static final int MAX_ROUNDS = 4;
+    private static final int MAX_MUTATIONS = 4;
+    private static final int MAX_MUTATED_ITEMS = 3;
+    private static final int MAX_SPAN_LENGTH = 3;
+
+    private final PackingEngine reference;
+    private final PackingEngine candidate;
+    private final Random random;
+
+    private int cases = 0;
+    private long referenceNanos = 0;
+    private long candidateNanos = 0;
+
+    PackingFuzzer(PackingEngine reference, PackingEngine candidate, long seed) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Runs random cases until one of them fails. Returns the minimised failure, or null if all of them passed.
+     */
+    @Nullable
+    Failure run(int cases) {
+        for (int i = 0; i < cases; i++) {
+            Case fuzzCase = generate();
+            long[] nanos = new long[2];
+
+            Failure failure = execute(fuzzCase, nanos);
+
+            this.cases++;
+            referenceNanos += nanos[0];
+            candidateNanos += nanos[1];
+
+            if (failure != null) return minimise(failure);
+        }
+
+        return null;
+    }
+
+    int getCases() {
+        return cases;
+    }
+
+    /**
+     * Time spent packing and updating in the reference engine, not counting minimisation.
+     */
+    long getReferenceNanos() {
+        return referenceNanos;
+    }
+
+    /**
+     * Time spent packing and updating in the candidate engine, not counting minimisation.
+     */
+    long getCandidateNanos() {
+        return candidateNanos;
+    }
+
+    private Case generate() {
+        int spans = 1 + random.nextInt(MAX_SPANS);
+        Orientation orientation = random.nextBoolean() ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+
+        // Uniform items exercise the runs of equal placements that changes keep
+        boolean uniform = random.nextInt(3) == 0;
+        boolean sections = random.nextBoolean();
+
+        List<Item> items = new ArrayList<>();
+        int itemCount = random.nextInt(MAX_ITEMS);
+
+        for (int i = 0; i < itemCount; i++) {
+            items.add(generateItem(spans, orientation, uniform));
+        }
+
+        List<Round> rounds = new ArrayList<>();
+        int roundCount = 1 + random.nextInt(MAX_ROUNDS);
+
+        for (int i = 0; i < roundCount; i++) {
+            List<Mutation> mutations = new ArrayList<>();
+            int mutationCount = 1 + random.nextInt(MAX_MUTATIONS);
+
+            for (int j = 0; j < mutationCount; j++) {
+                mutations.add(generateMutation(spans, orientation, uniform));
+            }
+
+            // Changes arrive when only some of the items have been packed
+            rounds.add(new Round(random.nextInt(MAX_ITEMS + 1), mutations));
+        }
+
+        return new Case(spans, orientation, sections, items, rounds);
+    }
+
+    private Mutation generateMutation(int spans, Orientation orientation, boolean uniform) {
+        int type = random.nextInt(4);
+        int position = random.nextInt(MAX_ITEMS + 1);
+        int count = 1 + random.nextInt(MAX_MUTATED_ITEMS);
+
+        List<Item> items = new ArrayList<>();
+
+        if (type == Mutation.ADD || type == Mutation.UPDATE) {
+            for (int i = 0; i < (type == Mutation.ADD ? count : 1); i++) {
+                items.add(generateItem(spans, orientation, uniform));
+            }
+        }
+
+        int target = type == Mutation.MOVE ? random.nextInt(MAX_ITEMS + 1) : count;
+
+        return new Mutation(type, position, target, items);
+    }
+
+    private Item generateItem(int spans, Orientation orientation, boolean uniform) {
+        // Sections start at any item, whatever its span size, so changing one may not change the span sizes
+        boolean sectionStart = random.nextInt(6) == 0;
+
+        if (uniform) return new Item(new SpanSize(1, 1), sectionStart);
+
+        // Full span items are common
+        int span = random.nextInt(4) == 0 ? spans : 1 + random.nextInt(spans);
+        int length = 1 + random.nextInt(MAX_SPAN_LENGTH);
+
+        return new Item(orientation == Orientation.VERTICAL ? new SpanSize(span, length) : new SpanSize(length, span), sectionStart);
+    }
+
+    /**
+     * Runs the case through both engines, adding the time spent in each of them to the nanos.
+     */
+    @Nullable
+    private Failure execute(Case fuzzCase, long[] nanos) {
+        List<Item> items = new ArrayList<>(fuzzCase.items);
+
+        SectionLookup sectionLookup = null;
+
+        if (fuzzCase.sections) {
+            // Sections start at the items flagged after all the changes so far
+            sectionLookup = position -> items.get(position).sectionStart;
+        }
+
+        reference.reset(fuzzCase.spans, fuzzCase.orientation, sectionLookup);
+        candidate.reset(fuzzCase.spans, fuzzCase.orientation, sectionLookup);
+
+        for (Round round : fuzzCase.rounds) {
+            Failure failure = compare(fuzzCase, round.packedCount % (items.size() + 1), items, nanos);
+            if (failure != null) return failure;
+
+            PackingEngine[] engines = {reference, candidate};
+            PendingUpdates[] updates = {new PendingUpdates(), new PendingUpdates()};
+
+            for (Mutation mutation : round.mutations) {
+                mutation.apply(items, engines, updates);
+            }
+
+            List<SpanSize> spanSizes = getSpanSizes(items);
+            PendingUpdates referenceUpdates = updates[0];
+            PendingUpdates candidateUpdates = updates[1];
+
+            long start = System.nanoTime();
+            reference.update(referenceUpdates, spanSizes);
+            nanos[0] += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            try {
+                candidate.update(candidateUpdates, spanSizes);
+            } catch (RuntimeException e) {
+                return new Failure(fuzzCase, -1, null, null, e);
+            } finally {
+                nanos[1] += System.nanoTime() - start;
+            }
+        }
+
+        return compare(fuzzCase, items.size(), items, nanos);
+    }
+
+    private static List<SpanSize> getSpanSizes(List<Item> items) {
+        List<SpanSize> spanSizes = new ArrayList<>(items.size());
+
+        for (Item item : items) {
+            spanSizes.add(item.spanSize);
+        }
+
+        return spanSizes;
+    }
+
+    @Nullable
+    private Failure compare(Case fuzzCase, int count, List<Item> items, long[] nanos) {
+        List<Rect> expected = new ArrayList<>(count);
+        List<Rect> actual = new ArrayList<>(count);
+
+        long start = System.nanoTime();
+        place(reference, count, items, expected);
+        nanos[0] += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        try {
+            place(candidate, count, items, actual);
+        } catch (RuntimeException e) {
+            int position = actual.size();
+            return new Failure(fuzzCase, position, expected.get(position), null, e);
+        } finally {
+            nanos[1] += System.nanoTime() - start;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!expected.get(i).equals(actual.get(i))) {
+                return new Failure(fuzzCase, i, expected.get(i), actual.get(i), null);
+            }
+        }
+
+        return null;
+    }
+
+    private static void place(PackingEngine engine, int count, List<Item> items, List<Rect> placements) {
+        for (int i = 0; i < count; i++) {
+            // Engines may reuse their rects, so they're copied before packing goes on
+            placements.add(new Rect(engine.place(i, items.get(i).spanSize)));
+        }
+    }
+
+    /**
+     * Removes items, rounds and changes from the failing case, and simplifies span sizes, for as long as
+     * the candidate still fails.
+     */
+    private Failure minimise(Failure failure) {
+        boolean reduced = true;
+
+        while (reduced) {
+            reduced = false;
+
+            for (Case smaller : getReductions(failure.fuzzCase)) {
+                Failure smallerFailure = execute(smaller, new long[2]);
+
+                if (smallerFailure != null) {
+                    failure = smallerFailure;
+                    reduced = true;
+                    break;
+                }
+            }
+        }
+
+        return failure;
+    }
+
+    private static List<Case> getReductions(Case fuzzCase) {
+        List<Case> reductions = new ArrayList<>();
+        List<Item> items = fuzzCase.items;
+        List<Round> rounds = fuzzCase.rounds;
+
+        // Items are removed in chunks first, halving them down to single items
+        for (int chunk = Math.max(1, items.size() / 2); chunk >= 1; chunk /= 2) {
+            for (int start = 0; start < items.size(); start += chunk) {
+                List<Item> reduced = new ArrayList<>(items);
+                reduced.subList(start, Math.min(start + chunk, items.size())).clear();
+                reductions.add(new Case(fuzzCase.spans, fuzzCase.orientation, fuzzCase.sections, reduced, rounds));
+            }
+
+            if (chunk == 1) break;
+        }
+
+        for (int i = 0; i < rounds.size(); i++) {
+            List<Round> reduced = new ArrayList<>(rounds);
+            reduced.remove(i);
+            reductions.add(new Case(fuzzCase.spans, fuzzCase.orientation, fuzzCase.sections, items, reduced));
+        }
+
+        for (int i = 0; i < rounds.size(); i++) {
+            Round round = rounds.get(i);
+
+            for (int j = 0; j < round.mutations.size(); j++) {
+                List<Mutation> mutations = new ArrayList<>(round.mutations);
+                mutations.remove(j);
+
+                List<Round> reduced = new ArrayList<>(rounds);
+                reduced.set(i, new Round(round.packedCount, mutations));
+                reductions.add(new Case(fuzzCase.spans, fuzzCase.orientation, fuzzCase.sections, items, reduced));
+            }
+        }
+
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+
+            if (item.spanSize.width != 1 || item.spanSize.height != 1) {
+                List<Item> reduced = new ArrayList<>(items);
+                reduced.set(i, new Item(new SpanSize(1, 1), item.sectionStart));
+                reductions.add(new Case(fuzzCase.spans, fuzzCase.orientation, fuzzCase.sections, reduced, rounds));
+            }
+
+            if (item.sectionStart) {
+                List<Item> reduced = new ArrayList<>(items);
+                reduced.set(i, new Item(item.spanSize, false));
+                reductions.add(new Case(fuzzCase.spans, fuzzCase.orientation, fuzzCase.sections, reduced, rounds));
+            }
+        }
+
+        return reductions;
+    }
+
+    private static String toString(Item item) {
+        return item.spanSize.width + "x" + item.spanSize.height + (item.sectionStart ? "s" : "");
+    }
+
+    /**
+     * Span sizes packed before any change, and the rounds of changes applied to them.
+     */
+    static final class Case {
+        final int spans;
+        final Orientation orientation;
+        // Whether the flagged items start sections
+        final boolean sections;
+        final List<Item> items;
+        final List<Round> rounds;
+
+        Case(int spans, Orientation orientation, boolean sections, List<Item> items, List<Round> rounds) {
+            this.spans = spans;
+            this.orientation = orientation;
+            this.sections = sections;
+            this.items = Collections.unmodifiableList(items);
+            this.rounds = Collections.unmodifiableList(rounds);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(orientation).append(", ").append(spans).append(" spans, ");
+            builder.append(sections ? "sections at items marked s, items" : "items");
+
+            for (Item item : items) {
+                builder.append(' ').append(PackingFuzzer.toString(item));
+            }
+
+            // Positions are described as they're applied to the items there are at that point
+            List<Item> items = new ArrayList<>(this.items);
+
+            for (Round round : rounds) {
+                builder.append("\n  pack ").append(round.packedCount % (items.size() + 1));
+
+                for (Mutation mutation : round.mutations) {
+                    String description = mutation.apply(items, new PackingEngine[0], new PendingUpdates[0]);
+                    if (description != null) builder.append("; ").append(description);
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+
+    /**
+     * An item's span size, and whether it starts a section when there are sections.
+     */
+    static final class Item {
+        final SpanSize spanSize;
+        final boolean sectionStart;
+
+        Item(SpanSize spanSize, boolean sectionStart) {
+            this.spanSize = spanSize;
+            this.sectionStart = sectionStart;
+        }
+    }
+
+    /**
+     * Changes made after packing some of the items, notified to the engines together.
+     */
+    static final class Round {
+        final int packedCount;
+        final List<Mutation> mutations;
+
+        Round(int packedCount, List<Mutation> mutations) {
+            this.packedCount = packedCount;
+            this.mutations = Collections.unmodifiableList(mutations);
+        }
+    }
+
+    /**
+     * An adapter change. Positions are wrapped around the items there are when it's applied, so it stays
+     * valid when the case is minimised.
+     */
+    static final class Mutation {
+        static final int ADD = 0;
+        static final int REMOVE = 1;
+        static final int MOVE = 2;
+        static final int UPDATE = 3;
+
+        final int type;
+        final int position;
+        // Item count for removals, destination for moves
+        final int target;
+        final List<Item> items;
+
+        Mutation(int type, int position, int target, List<Item> items) {
+            this.type = type;
+            this.position = position;
+            this.target = target;
+            this.items = Collections.unmodifiableList(items);
+        }
+
+        /**
+         * Applies the change to the items and notifies it to the updates of each engine. Returns its
+         * description, or null if there were no items to change.
+         */
+        @Nullable
+        String apply(List<Item> items, PackingEngine[] engines, PendingUpdates[] updates) {
+            int size = items.size();
+
+            switch (type) {
+                case ADD: {
+                    int start = position % (size + 1);
+                    items.addAll(start, this.items);
+
+                    for (PendingUpdates pendingUpdates : updates) {
+                        pendingUpdates.onItemsAdded(start, this.items.size());
+                    }
+
+                    StringBuilder builder = new StringBuilder("add ").append(start);
+
+                    for (Item item : this.items) {
+                        builder.append(' ').append(PackingFuzzer.toString(item));
+                    }
+
+                    return builder.toString();
+                }
+                case REMOVE: {
+                    if (size == 0) return null;
+
+                    int start = position % size;
+                    int count = Math.min(target, size - start);
+                    items.subList(start, start + count).clear();
+
+                    for (PendingUpdates pendingUpdates : updates) {
+                        pendingUpdates.onItemsRemoved(start, count);
+                    }
+
+                    return "remove " + start + " " + count;
+                }
+                case MOVE: {
+                    if (size < 2) return null;
+
+                    int from = position % size;
+                    int to = target % size;
+                    items.add(to, items.remove(from));
+
+                    for (int i = 0; i < engines.length; i++) {
+                        engines[i].onItemsMoved(updates[i], from, to);
+                    }
+
+                    return "move " + from + " " + to;
+                }
+                default: {
+                    if (size == 0) return null;
+
+                    int updated = position % size;
+                    items.set(updated, this.items.get(0));
+
+                    for (PendingUpdates pendingUpdates : updates) {
+                        pendingUpdates.onItemsUpdated(updated, 1);
+                    }
+
+                    return "update " + updated + " " + PackingFuzzer.toString(this.items.get(0));
+                }
+            }
+        }
+    }
+
+    /**
+     * The first placement the candidate engine got wrong, or the error it threw.
+     */
+    static final class Failure {
+        final Case fuzzCase;
+        final int position;
+        @Nullable
+        final Rect expected;
+        @Nullable
+        final Rect actual;
+        @Nullable
+        final RuntimeException error;
+
+        Failure(Case fuzzCase, int position, @Nullable Rect expected, @Nullable Rect actual, @Nullable RuntimeException error) {
+            this.fuzzCase = fuzzCase;
+            this.position = position;
+            this.expected = expected;
+            this.actual = actual;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            String description;
+
+            if (error != null) {
+                description = position < 0
+                        ? "Update threw " + error
+                        : "Placing item " + position + " threw " + error;
+            } else {
+                description = "Item " + position + " placed at " + actual + ", expected " + expected;
+            }
+
+            return description + "\n" + fuzzCase;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PackingFuzzerTest {
+    private static final int CASES = 2000;
+
+    @Test
+    public void incrementalPacksLikeReference() {
+        for (long seed = 0; seed < 4; seed++) {
+            PackingFuzzer fuzzer = new PackingFuzzer(new PackingEngine.Reference(), new PackingEngine.Incremental(), seed);
+            PackingFuzzer.Failure failure = fuzzer.run(CASES);
+
+            assertNull("Seed " + seed + ": " + failure, failure);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PendingUpdatesTest {
+    private final PendingUpdates updates = new PendingUpdates();
+
+    @Test
+    public void removalAboveViewportMapsVisibleItemsBack() {
+        updates.onItemsRemoved(3, 1);
+
+        // Items 20 to 25 were visible at 21 to 26 before the removal
+        for (int position = 20; position < 26; position++) {
+            assertEquals(position + 1, updates.getOldPosition(position));
+        }
+
+        assertEquals(2, updates.getOldPosition(2));
+    }
+
+    @Test
+    public void itemsBetweenRemovalsMapBack() {
+        updates.onItemsRemoved(3, 2);
+        updates.onItemsRemoved(10, 1);
+
+        assertEquals(2, updates.getOldPosition(2));
+        assertEquals(5, updates.getOldPosition(3));
+        assertEquals(11, updates.getOldPosition(9));
+        assertEquals(13, updates.getOldPosition(10));
+    }
+
+    @Test
+    public void updatesKeepPositions() {
+        updates.onItemsUpdated(0, 5);
+        updates.onItemsRemoved(1, 1);
+
+        assertEquals(0, updates.getOldPosition(0));
+        assertEquals(4, updates.getOldPosition(3));
+    }
+
+    @Test
+    public void addedItemsHaveNoOldPosition() {
+        updates.onItemsRemoved(2, 1);
+        updates.onItemsAdded(5, 2);
+
+        assertEquals(1, updates.getOldPosition(1));
+        assertEquals(-1, updates.getOldPosition(5));
+        assertEquals(7, updates.getOldPosition(8));
+    }
+
+    @Test
+    public void clearForgetsRemovals() {
+        updates.onItemsRemoved(0, 4);
+        updates.clear();
+
+        assertEquals(6, updates.getOldPosition(6));
+    }
+}
@@ -0,0 +1,124 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.Orientation;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSize;
+import com.chekh.spannedgridlayoutmanager.SpannedGridLayoutManager.SpanSizeLookup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PlacementCacheTest {
+    private static final int SPANS = 4;
+
+    private final PlacementCache cache = new PlacementCache(8);
+
+    @Test
+    public void sequencesSharingTheirHeadAreKeptSideBySide() {
+        int[] first = widths(16, 1, 20, 2);
+        int[] second = widths(16, 1, 20, 3);
+
+        PlacementCache.Placements firstPlacements = placements(first);
+        PlacementCache.Placements secondPlacements = placements(second);
+
+        cache.put(firstPlacements);
+        cache.put(secondPlacements);
+
+        assertEquals(2, cache.size());
+        assertSame(firstPlacements, find(first));
+        assertSame(secondPlacements, find(second));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void longerSequenceReplacesItsPrefixes() {
+        int[] widths = widths(16, 1, 20, 2);
+
+        cache.put(placements(widths, 5));
+        cache.put(placements(widths, 20));
+
+        PlacementCache.Placements longest = placements(widths);
+        cache.put(longest);
+
+        assertEquals(1, cache.size());
+        assertSame(longest, find(widths));
+    }
+
+    @Test
+    public void prefixOfCachedSequenceIsNotStored() {
+        int[] widths = widths(16, 1, 20, 2);
+
+        PlacementCache.Placements longest = placements(widths);
+        cache.put(longest);
+        cache.put(placements(widths, 20));
+
+        assertEquals(1, cache.size());
+        assertSame(longest, find(widths));
+    }
+
+    @Test
+    public void placementsLongerThanTheItemsAreNotUsed() {
+        int[] widths = widths(16, 1, 20, 2);
+
+        cache.put(placements(widths));
+
+        assertNull(cache.find(SPANS, Orientation.VERTICAL, lookup(widths), 30));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void oldestSequenceSharingTheHeadIsDropped() {
+        for (int width = 1; width <= 5; width++) {
+            cache.put(placements(widths(16, 1, 4, width)));
+        }
+
+        assertEquals(4, cache.size());
+        assertNull(find(widths(16, 1, 4, 1)));
+        assertEquals(20, find(widths(16, 1, 4, 5)).count);
+    }
+
+    private PlacementCache.Placements find(int[] widths) {
+        return cache.find(SPANS, Orientation.VERTICAL, lookup(widths), widths.length);
+    }
+
+    // Items of the first width followed by items of the second one
+    private static int[] widths(int firstCount, int firstWidth, int secondCount, int secondWidth) {
+        int[] widths = new int[firstCount + secondCount];
+
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = i < firstCount ? firstWidth : secondWidth;
+        }
+
+        return widths;
+    }
+
+    private static SpanSizeLookup lookup(int[] widths) {
+        return position -> new SpanSize(widths[position], 1);
+    }
+
+    private static PlacementCache.Placements placements(int[] widths) {
+        return placements(widths, widths.length);
+    }
+
+    // One item per row is enough, only the span sizes are compared
+    private static PlacementCache.Placements placements(int[] widths, int count) {
+        int[] rects = new int[count * 4];
+
+        for (int i = 0; i < count; i++) {
+            rects[i * 4 + 1] = i;
+            rects[i * 4 + 2] = widths[i];
+            rects[i * 4 + 3] = i + 1;
+        }
+
+        int[] freeRects = {0, count, SPANS, Integer.MAX_VALUE};
+
+        return new PlacementCache.Placements(SPANS, Orientation.VERTICAL, rects, freeRects, new int[]{0}, new int[][]{{0, 0, SPANS, Integer.MAX_VALUE}});
+    }
+}
@@ -0,0 +1,102 @@
+package com.chekh.spannedgridlayoutmanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VisibilityTrackerTest {
+    private final VisibilityTracker tracker = new VisibilityTracker();
+
+    @Test
+    public void insertAboveViewportShiftsVisibleItems() {
+        addFrame(10, 15);
+        tracker.update();
+
+        tracker.onItemsAdded(0, 3);
+
+        addFrame(13, 18);
+        assertTrue(tracker.update().isEmpty());
+    }
+
+    @Test
+    public void removalAboveViewportShiftsVisibleItems() {
+        addFrame(10, 15);
+        tracker.update();
+
+        tracker.onItemsRemoved(2, 4);
+
+        addFrame(6, 11);
+        assertTrue(tracker.update().isEmpty());
+    }
+
+    @Test
+    public void removedItemsAreNotReportedAsHidden() {
+        addFrame(10, 15);
+        tracker.update();
+
+        tracker.onItemsRemoved(12, 1);
+
+        // The item after the visible ones moves into view
+        addFrame(10, 15);
+        VisibilityChanges changes = tracker.update();
+
+        assertEquals(1, changes.getShownCount());
+        assertEquals(14, changes.getShownPosition(0));
+        assertEquals(0, changes.getHiddenCount());
+    }
+
+    @Test
+    public void movedItemsKeepTheirVisibility() {
+        addFrame(10, 15);
+        tracker.update();
+
+        tracker.onItemsMoved(14, 0, 1);
+
+        tracker.add(0, 1f);
+        addFrame(11, 15);
+        assertTrue(tracker.update().isEmpty());
+    }
+
+    @Test
+    public void shiftedItemsReportTheirOwnChanges() {
+        addFrame(10, 15);
+        tracker.update();
+
+        tracker.onItemsAdded(0, 1);
+
+        tracker.add(11, 0.5f);
+        addFrame(12, 16);
+        VisibilityChanges changes = tracker.update();
+
+        assertEquals(1, changes.getChangedCount());
+        assertEquals(11, changes.getChangedPosition(0));
+        assertEquals(0, changes.getShownCount());
+        assertEquals(0, changes.getHiddenCount());
+    }
+
+    @Test
+    public void resetRecordsTheNextFrameWithoutReporting() {
+        addFrame(10, 15);
+        tracker.update();
+
+        tracker.reset();
+
+        addFrame(0, 5);
+        assertTrue(tracker.update().isEmpty());
+
+        addFrame(1, 6);
+        VisibilityChanges changes = tracker.update();
+
+        assertEquals(1, changes.getShownCount());
+        assertEquals(5, changes.getShownPosition(0));
+        assertEquals(1, changes.getHiddenCount());
+        assertEquals(0, changes.getHiddenPosition(0));
+    }
+
+    private void addFrame(int from, int to) {
+        for (int position = from; position < to; position++) {
+            tracker.add(position, 1f);
+        }
+    }
+}